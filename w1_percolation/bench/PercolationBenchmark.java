@@ -0,0 +1,296 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       8/19/2012
+ *  Last updated:  8/19/2012
+ *
+ *  Dependencies: Percolation.java PercolationStats.java
+ *
+ *  Micro-benchmarks of the percolation model. Every benchmark is
+ *  warmed up and then measured in timed iterations, reporting
+ *  throughput and bytes allocated per operation as tab-separated
+ *  lines.
+ *
+ *  % java -cp bin:lib/* PercolationBenchmark [filter]
+ *
+ *----------------------------------------------------------------*/
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PercolationBenchmark {
+
+    private static final int[] SIZES = {64, 256, 1024, 4096};
+    private static final int[] STATS_SIZES = {64, 256, 1024};
+    private static final int STATS_TRIALS = 16;
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1000000000L;
+
+    private static volatile long sink; // Consumes results, so that the JIT
+                                       // cannot eliminate benchmarked code
+
+    /**
+     * Orders of opening sites.
+     */
+    private enum Order {
+        /** Random permutation of all sites. */
+        RANDOM,
+        /** Serpentine path from the top to the bottom row. */
+        SNAKE
+    }
+
+    /**
+     * A benchmarked operation.
+     */
+    private abstract static class Benchmark {
+        private String name; // Name with parameters
+
+        public Benchmark(String name) {
+            this.name = name;
+        }
+
+        /** Prepares the state before measurement. */
+        public void setUp() { }
+
+        /** Runs the operation and returns the number of ops performed. */
+        public abstract long run();
+    }
+
+    /**
+     * Opens sites of the given order until all are opened.
+     */
+    private static Benchmark open(final int n, final Order order) {
+        return new Benchmark("open\tn=" + n + "\t" + order) {
+            private Percolation percolation;
+            private int[] sites;
+
+            @Override
+            public void setUp() {
+                percolation = new Percolation(n);
+                sites = sites(n, order);
+            }
+
+            @Override
+            public long run() {
+                percolation.reset();
+                for (int site : sites) {
+                    percolation.open(site / n + 1, site % n + 1);
+                }
+                sink += percolation.percolates() ? 1 : 0;
+                return sites.length;
+            }
+        };
+    }
+
+    /**
+     * Asks whether a system opened to the threshold percolates.
+     */
+    private static Benchmark percolates(final int n, final Order order) {
+        return new Benchmark("percolates\tn=" + n + "\t" + order) {
+            private Percolation percolation;
+
+            @Override
+            public void setUp() {
+                percolation = openedToThreshold(n, order);
+            }
+
+            @Override
+            public long run() {
+                long percolated = 0;
+                for (int k = 0; k < 1024; k++) {
+                    if (percolation.percolates()) percolated++;
+                }
+                sink += percolated;
+                return 1024;
+            }
+        };
+    }
+
+    /**
+     * Asks whether random sites of a system opened to the threshold
+     * are full.
+     */
+    private static Benchmark isFull(final int n, final Order order) {
+        return new Benchmark("isFull\tn=" + n + "\t" + order) {
+            private Percolation percolation;
+            private int[] queries;
+
+            @Override
+            public void setUp() {
+                percolation = openedToThreshold(n, order);
+                queries = sites(n, Order.RANDOM);
+            }
+
+            @Override
+            public long run() {
+                long full = 0;
+                int count = Math.min(queries.length, 1 << 16);
+                for (int k = 0; k < count; k++) {
+                    int site = queries[k];
+                    if (percolation.isFull(site / n + 1, site % n + 1)) {
+                        full++;
+                    }
+                }
+                sink += full;
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Runs whole experiments, one op per trial.
+     */
+    private static Benchmark stats(final int n, final int threads) {
+        return new Benchmark("stats\tn=" + n + "\tthreads=" + threads) {
+            private long seed;
+
+            @Override
+            public long run() {
+                PercolationStats stats = new PercolationStats(n,
+                        STATS_TRIALS, seed++, threads,
+                        PercolationStats.Sampling.PERMUTATION);
+                sink += Double.doubleToLongBits(stats.mean());
+                return STATS_TRIALS;
+            }
+        };
+    }
+
+    private static Percolation openedToThreshold(int n, Order order) {
+        Percolation percolation = new Percolation(n);
+        for (int site : sites(n, order)) {
+            if (percolation.percolates()) break;
+            percolation.open(site / n + 1, site % n + 1);
+        }
+        return percolation;
+    }
+
+    /**
+     * Returns sites in the given order as flattened 0-based indexes.
+     */
+    private static int[] sites(int n, Order order) {
+        if (order == Order.RANDOM) {
+            int[] sites = new int[n * n];
+            for (int p = 0; p < sites.length; p++) {
+                sites[p] = p;
+            }
+
+            Random random = new Random(n);
+            for (int k = sites.length - 1; k > 0; k--) {
+                int r = random.nextInt(k + 1);
+                int site = sites[r];
+                sites[r] = sites[k];
+                sites[k] = site;
+            }
+            return sites;
+        }
+
+        // Even rows are run through alternately left to right and right
+        // to left, joined by a single site at the end of each odd row
+        List<Integer> path = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            if (i % 2 == 0) {
+                boolean forward = i % 4 == 0;
+                for (int k = 0; k < n; k++) {
+                    int j = forward ? k : n - 1 - k;
+                    path.add(i * n + j);
+                }
+            } else {
+                int j = i % 4 == 1 ? n - 1 : 0;
+                path.add(i * n + j);
+            }
+        }
+
+        int[] sites = new int[path.size()];
+        for (int k = 0; k < sites.length; k++) {
+            sites[k] = path.get(k);
+        }
+        return sites;
+    }
+
+    /**
+     * Runs warmup and measurement iterations and prints the mean and
+     * the standard deviation of throughput along with bytes allocated
+     * per op by the benchmarking thread.
+     */
+    private static void measure(Benchmark benchmark) {
+        benchmark.setUp();
+        for (int k = 0; k < WARMUP_ITERATIONS; k++) {
+            iterate(benchmark);
+        }
+
+        double[] throughput = new double[MEASUREMENT_ITERATIONS];
+        long ops = 0;
+        long allocated = allocatedBytes();
+        for (int k = 0; k < MEASUREMENT_ITERATIONS; k++) {
+            long start = System.nanoTime();
+            long iterationOps = iterate(benchmark);
+            long elapsed = System.nanoTime() - start;
+
+            throughput[k] = iterationOps * 1e9 / elapsed;
+            ops += iterationOps;
+        }
+        allocated = allocatedBytes() - allocated;
+
+        StdOut.printf("%s\t%.1f\t%.1f\t%.2f%n", benchmark.name,
+                StdStats.mean(throughput), StdStats.stddev(throughput),
+                allocated < 0 ? Double.NaN : ((double) allocated) / ops);
+    }
+
+    private static long iterate(Benchmark benchmark) {
+        long ops = 0;
+        long start = System.nanoTime();
+        do {
+            ops += benchmark.run();
+        } while (System.nanoTime() - start < ITERATION_NANOS);
+        return ops;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far,
+     * or -1 if the JVM does not count them.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Client of the class. Runs the benchmarks whose names contain
+     * the filter, or all of them.
+     */
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (int n : SIZES) {
+            for (Order order : Order.values()) {
+                benchmarks.add(open(n, order));
+                benchmarks.add(percolates(n, order));
+                benchmarks.add(isFull(n, order));
+            }
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int n : STATS_SIZES) {
+            benchmarks.add(stats(n, 1));
+            if (cores > 1) {
+                benchmarks.add(stats(n, cores));
+            }
+        }
+
+        StdOut.println("benchmark\tsize\tparameter\tops/s\tstddev\tbytes/op");
+        for (Benchmark benchmark : benchmarks) {
+            if (benchmark.name.contains(filter)) {
+                measure(benchmark);
+            }
+        }
+    }
+
+}
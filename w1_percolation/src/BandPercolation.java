@@ -0,0 +1,378 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       8/19/2012
+ *  Last updated:  8/19/2012
+ *
+ *  Dependencies: None
+ *
+ *  Percolation checker of a single large system that labels
+ *  horizontal bands of the grid in parallel
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BandPercolation {
+
+    private static final int MAX_N = 46340; // Largest n with n * n sites
+                                            // addressable by int
+
+    private int n; // A percolation system is modeled using an n x n grid
+
+    private boolean[] siteOpened; // Indicates if a site is opened,
+                                  // in row-major order
+
+    /**
+     * Creates a percolation system with all sites blocked.
+     *
+     * @param n the size of the grid
+     */
+    public BandPercolation(int n) {
+        if (n <= 0 || n > MAX_N) {
+            throw new IllegalArgumentException("Only N in [1, " + MAX_N
+                    + "] allowed");
+        }
+
+        this.n = n;
+        this.siteOpened = new boolean[n * n];
+    }
+
+    /**
+     * Opens the site.
+     *
+     * @param i row index (1 <= i <= n)
+     * @param j column index (1 <= j <= n)
+     */
+    public void open(int i, int j) {
+        siteOpened[flattenIndexes(i, j)] = true;
+    }
+
+    /**
+     * Checks if the site is open.
+     *
+     * @param i row index (1 <= i <= n)
+     * @param j column index (1 <= j <= n)
+     */
+    public boolean isOpen(int i, int j) {
+        return siteOpened[flattenIndexes(i, j)];
+    }
+
+    /**
+     * Opens every site independently with probability p and blocks
+     * the rest, using the given number of threads. Every row is filled
+     * from its own xorshift stream derived from the seed and the row
+     * number, so the grid does not depend on the number of threads.
+     *
+     * @param p the probability of a site to be open (0 <= p <= 1)
+     * @param seed the seed of the grid
+     * @param threads the number of worker threads
+     */
+    public void fill(final double p, final long seed, int threads) {
+        if (p < 0.0 || p > 1.0) {
+            throw new IllegalArgumentException("Only p in [0, 1] allowed");
+        }
+
+        final long threshold = (long) (p * (1L << 32));
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int b = 0; b < bands(threads); b++) {
+            final int firstRow = firstRow(b, threads);
+            final int endRow = firstRow(b + 1, threads);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = firstRow; i < endRow; i++) {
+                        fillRow(i, threshold, rowSeed(seed, i));
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks, threads);
+    }
+
+    /**
+     * Checks if the system percolates, using the given number of threads.
+     * The grid is split into one horizontal band per thread. Every band
+     * labels its clusters on its own (Hoshen-Kopelman) and reports
+     * the clusters of its first and last rows. The reported clusters are
+     * then merged along the band boundaries together with virtual top
+     * and bottom sites, and the system percolates if those get connected.
+     *
+     * @param threads the number of worker threads
+     */
+    public boolean percolates(int threads) {
+        List<Band> bands = new ArrayList<Band>();
+        for (int b = 0; b < bands(threads); b++) {
+            bands.add(new Band(firstRow(b, threads), firstRow(b + 1, threads)));
+        }
+        invokeAll(bands, threads);
+
+        // Labels of a band are offset by the labels of the bands above
+        int labelsPerBand = 3 * n + 1;
+        int top = bands.size() * labelsPerBand;
+        int bottom = top + 1;
+        int[] parent = new int[bottom + 1];
+        for (int p = 0; p < parent.length; p++) {
+            parent[p] = p;
+        }
+
+        for (int b = 0; b < bands.size(); b++) {
+            Band band = bands.get(b);
+            int offset = b * labelsPerBand;
+            for (int j = 0; j < n; j++) {
+                if (b == 0 && band.firstRowRoots[j] != 0) {
+                    union(parent, offset + band.firstRowRoots[j], top);
+                }
+                if (b == bands.size() - 1 && band.lastRowRoots[j] != 0) {
+                    union(parent, offset + band.lastRowRoots[j], bottom);
+                }
+                if (b > 0) { // Connect to the band above
+                    Band above = bands.get(b - 1);
+                    if (band.firstRowRoots[j] != 0
+                            && above.lastRowRoots[j] != 0) {
+                        union(parent, offset + band.firstRowRoots[j],
+                                offset - labelsPerBand
+                                        + above.lastRowRoots[j]);
+                    }
+                }
+            }
+        }
+        return find(parent, top) == find(parent, bottom);
+    }
+
+    private int flattenIndexes(int i, int j) {
+        if (i < 1 || i > n) {
+            throw new IndexOutOfBoundsException("Row index i out of bounds");
+        }
+        if (j < 1 || j > n) {
+            throw new IndexOutOfBoundsException("Column index j out of bounds");
+        }
+        return (i - 1) * n + j - 1;
+    }
+
+    private int bands(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException(
+                    "Only positive number of threads allowed");
+        }
+        return Math.min(threads, n);
+    }
+
+    private int firstRow(int band, int threads) {
+        return (int) ((long) band * n / bands(threads));
+    }
+
+    private void fillRow(int i, long threshold, long state) {
+        int rowStart = i * n;
+        state |= 1; // Xorshift state is non-zero
+        for (int j = 0; j < n; j += 2) {
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+
+            siteOpened[rowStart + j] = (state >>> 32) < threshold;
+            if (j + 1 < n) {
+                siteOpened[rowStart + j + 1] =
+                        (state & 0xFFFFFFFFL) < threshold;
+            }
+        }
+    }
+
+    /**
+     * Derives the seed of a row's random stream (SplitMix64 finalizer).
+     */
+    private static long rowSeed(long seed, int row) {
+        long z = seed + (row + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static <T> void invokeAll(List<? extends Callable<T>> tasks,
+            int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Labelling interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Labelling failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int find(int[] parent, int p) {
+        while (p != parent[p]) {
+            parent[p] = parent[parent[p]]; // Path halving
+            p = parent[p];
+        }
+        return p;
+    }
+
+    private static void union(int[] parent, int p, int q) {
+        parent[find(parent, p)] = find(parent, q);
+    }
+
+    /**
+     * Cluster labelling of the rows of one band. Sites of the band's
+     * first row get permanent labels 1..n (anchors), and a cluster
+     * holding an anchor always has an anchor as its root. Labels of
+     * other clusters are renumbered after every row into n+1..2n, so
+     * the band needs O(n) memory while the anchors keep identifying
+     * the first-row clusters until the last row.
+     */
+    private class Band implements Callable<Void> {
+        private int firstRow; // The first row of the band (0-based)
+        private int endRow; // The row after the last row of the band
+
+        private int[] firstRowRoots; // Root labels of the first row
+                                     // sites, zero for blocked sites
+        private int[] lastRowRoots; // Root labels of the last row sites
+
+        public Band(int firstRow, int endRow) {
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        public Void call() {
+            int[] labelParent = new int[3 * n + 1];
+            int[] labelRenumbering = new int[3 * n + 1];
+            int[] previousLabels = new int[n];
+            int[] currentLabels = new int[n];
+
+            int transientLabels = 0; // Renumbered labels of the previous row
+            for (int i = firstRow; i < endRow; i++) {
+                int rowStart = i * n;
+                int nextLabel = n + transientLabels + 1;
+                for (int j = 0; j < n; j++) {
+                    if (!siteOpened[rowStart + j]) {
+                        currentLabels[j] = 0;
+                        continue;
+                    }
+
+                    int up = i > firstRow ? previousLabels[j] : 0;
+                    int left = j > 0 ? currentLabels[j - 1] : 0;
+                    int label;
+                    if (i == firstRow) {
+                        label = j + 1;
+                        labelParent[label] = label;
+                    } else if (up == 0 && left == 0) {
+                        label = nextLabel++;
+                        labelParent[label] = label;
+                    } else {
+                        label = up != 0 ? up : left;
+                    }
+                    if (left != 0) {
+                        label = union(labelParent, label, left);
+                    }
+                    if (up != 0) {
+                        label = union(labelParent, label, up);
+                    }
+                    currentLabels[j] = label;
+                }
+
+                // Renumber roots of other than anchored clusters
+                transientLabels = 0;
+                for (int j = 0; j < n; j++) {
+                    if (currentLabels[j] == 0) continue;
+
+                    int root = find(labelParent, currentLabels[j]);
+                    if (root > n) {
+                        if (labelRenumbering[root] == 0) {
+                            labelRenumbering[root] = n + ++transientLabels;
+                        }
+                        root = labelRenumbering[root];
+                    }
+                    currentLabels[j] = root;
+                }
+                for (int label = n + 1; label < nextLabel; label++) {
+                    labelRenumbering[label] = 0;
+                }
+                for (int label = n + 1; label <= n + transientLabels;
+                        label++) {
+                    labelParent[label] = label;
+                }
+
+                int[] swap = previousLabels;
+                previousLabels = currentLabels;
+                currentLabels = swap;
+            }
+
+            firstRowRoots = new int[n];
+            lastRowRoots = new int[n];
+            for (int j = 0; j < n; j++) {
+                if (siteOpened[firstRow * n + j]) {
+                    firstRowRoots[j] = find(labelParent, j + 1);
+                }
+                if (previousLabels[j] != 0) {
+                    lastRowRoots[j] = find(labelParent, previousLabels[j]);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Unites clusters of the labels preferring an anchor as the root.
+         * Returns the root.
+         */
+        private int union(int[] labelParent, int p, int q) {
+            int pRoot = find(labelParent, p);
+            int qRoot = find(labelParent, q);
+            if (pRoot == qRoot) return pRoot;
+
+            if (qRoot <= n && pRoot > n) {
+                labelParent[pRoot] = qRoot;
+                return qRoot;
+            }
+            labelParent[qRoot] = pRoot;
+            return pRoot;
+        }
+    }
+
+    /**
+     * Client of the class. Fills a random system and prints whether
+     * it percolates and how long labelling took.
+     *
+     * % java BandPercolation n p [threads [seed]]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 4) {
+            throw new IllegalArgumentException(
+                    "Provide n, p and optionally threads and seed");
+        }
+
+        int n = Integer.parseInt(args[0]);
+        double p = Double.parseDouble(args[1]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 2) {
+            threads = Integer.parseInt(args[2]);
+        }
+        long seed = StdRandom.uniform(Integer.MAX_VALUE);
+        if (args.length > 3) {
+            seed = Long.parseLong(args[3]);
+        }
+
+        BandPercolation percolation = new BandPercolation(n);
+        percolation.fill(p, seed, threads);
+
+        long start = System.currentTimeMillis();
+        boolean percolates = percolation.percolates(threads);
+        long elapsed = System.currentTimeMillis() - start;
+
+        if (percolates) StdOut.println("percolates");
+        else            StdOut.println("does not percolate");
+        StdOut.println("labelling time\t= " + elapsed + " ms");
+    }
+
+}
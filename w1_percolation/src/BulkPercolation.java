@@ -0,0 +1,125 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       8/19/2012
+ *  Last updated:  8/19/2012
+ *
+ *  Dependencies: StreamingPercolation.java
+ *
+ *  Model of a percolation system with every site opened at once
+ *  with a fixed probability
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.Random;
+
+public class BulkPercolation {
+
+    private int n; // A percolation system is modeled using an n x n grid
+
+    private boolean[] siteOpened; // Indicates if a site is opened,
+                                  // in row-major order
+
+    private StreamingPercolation sweep; // Row-by-row cluster labelling
+
+    /**
+     * Creates a percolation system with all sites blocked.
+     *
+     * @param n the size of the grid
+     */
+    public BulkPercolation(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Only positive N allowed");
+        }
+
+        this.n = n;
+        this.siteOpened = new boolean[n * n];
+        this.sweep = new StreamingPercolation(n);
+    }
+
+    /**
+     * Opens every site independently with probability p and blocks
+     * the rest. The random source only seeds a xorshift generator that
+     * runs inline in the loop, and every generated long decides two
+     * sites by comparing its halves against p scaled to 32 bits.
+     *
+     * @param p the probability of a site to be open (0 <= p <= 1)
+     * @param random the source of randomness
+     */
+    public void fill(double p, Random random) {
+        if (p < 0.0 || p > 1.0) {
+            throw new IllegalArgumentException("Only p in [0, 1] allowed");
+        }
+
+        long threshold = (long) (p * (1L << 32));
+        long state = random.nextLong() | 1; // Xorshift state is non-zero
+        for (int k = 0; k < siteOpened.length; k += 2) {
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+
+            siteOpened[k] = (state >>> 32) < threshold;
+            if (k + 1 < siteOpened.length) {
+                siteOpened[k + 1] = (state & 0xFFFFFFFFL) < threshold;
+            }
+        }
+    }
+
+    /**
+     * Checks if the site is open.
+     *
+     * @param i row index (1 <= i <= n)
+     * @param j column index (1 <= j <= n)
+     */
+    public boolean isOpen(int i, int j) {
+        if (i < 1 || i > n) {
+            throw new IndexOutOfBoundsException("Row index i out of bounds");
+        }
+        if (j < 1 || j > n) {
+            throw new IndexOutOfBoundsException("Column index j out of bounds");
+        }
+        return siteOpened[(i - 1) * n + j - 1];
+    }
+
+    /**
+     * Checks if the system percolates. Clusters are labelled in a single
+     * row-major sweep (Hoshen-Kopelman) that stops as soon as a row has
+     * no cluster reaching the top row.
+     */
+    public boolean percolates() {
+        sweep.reset();
+        for (int i = 0; i < n && sweep.mayPercolate(); i++) {
+            sweep.addRow(siteOpened, i * n);
+        }
+        return sweep.mayPercolate();
+    }
+
+    /**
+     * Client of the class. Prints the fraction of t random systems
+     * with sites open with probability p that percolate.
+     *
+     * % java BulkPercolation n p t [seed]
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            throw new IllegalArgumentException(
+                    "Provide n, p, t and optionally seed");
+        }
+
+        int n = Integer.parseInt(args[0]);
+        double p = Double.parseDouble(args[1]);
+        int t = Integer.parseInt(args[2]);
+        Random random = new Random();
+        if (args.length > 3) {
+            random.setSeed(Long.parseLong(args[3]));
+        }
+
+        BulkPercolation percolation = new BulkPercolation(n);
+        int percolated = 0;
+        for (int k = 0; k < t; k++) {
+            percolation.fill(p, random);
+            if (percolation.percolates()) percolated++;
+        }
+        StdOut.println("percolates\t= " + ((double) percolated) / t);
+    }
+
+}
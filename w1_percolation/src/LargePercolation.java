@@ -0,0 +1,291 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       8/19/2012
+ *  Last updated:  8/19/2012
+ *
+ *  Dependencies: None
+ *
+ *  Model of a percolation system too large for int indexes and
+ *  on-heap union-find arrays
+ *
+ *----------------------------------------------------------------*/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+public class LargePercolation {
+
+    private static final int VIRTUAL_SITES = 1;
+
+    private static final int SEGMENT_SHIFT = 30; // 1 GB segments
+    private static final byte RANK_MASK = 0x7F; // Rank of a root
+    private static final byte BOTTOM = (byte) 0x80; // Root's tree is
+                                                    // connected to
+                                                    // the bottom row
+
+    private int n; // A percolation system is modeled using an n x n grid
+    private long size; // Total number of sites in the system
+                       // plus virtual sites
+
+    private long[] siteOpened; // Bit set of opened sites
+    private MappedByteBuffer[] siteParent; // Parent link plus one of
+                                           // a site, zero for roots
+    private MappedByteBuffer[] siteRank; // Rank and bottom flag of
+                                         // a site's tree
+
+    /**
+     * Creates an empty percolation system with all sites blocked. The
+     * union-find arrays are mapped from a temporary file in the default
+     * temporary-file directory.
+     *
+     * @param n the size of the grid
+     */
+    public LargePercolation(int n) {
+        this(n, null);
+    }
+
+    /**
+     * Creates an empty percolation system with all sites blocked.
+     * The union-find arrays are mapped from a temporary file in
+     * the given directory. The file is created sparse, so its blocks
+     * are allocated only for the sites touched by the union-find. It is
+     * deleted as soon as it is mapped, where the system allows that.
+     *
+     * @param n the size of the grid
+     * @param directory the directory for the temporary file, or null
+     *                  for the default temporary-file directory
+     */
+    public LargePercolation(int n, File directory) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Only positive N allowed");
+        }
+
+        this.n = n;
+        this.size = (long) n * n + VIRTUAL_SITES;
+
+        this.siteOpened = new long[toIntExact((size + 63) >>> 6)];
+        try {
+            File file = File.createTempFile("percolation", ".bin", directory);
+            RandomAccessFile storage = new RandomAccessFile(file, "rw");
+            try {
+                this.siteParent = map(storage.getChannel(), 0, size * 8);
+                this.siteRank = map(storage.getChannel(), size * 8, size);
+            } finally {
+                storage.close();
+                // Mappings outlive the name on POSIX systems, so a killed
+                // run leaves nothing behind, and the space is freed once
+                // the buffers are collected
+                if (!file.delete()) file.deleteOnExit();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot map union-find arrays", e);
+        }
+
+        setOpened(0);
+    }
+
+    /**
+     * Opens the site if it is not already.
+     *
+     * @param i row index (1 <= i <= n)
+     * @param j column index (1 <= j <= n)
+     */
+    public void open(int i, int j) {
+        long p = flattenIndexes(i, j);
+
+        if (!isOpened(p)) {
+            setOpened(p);
+
+            // Still a root on its own, so the flag belongs to its tree
+            if (i == n) setRank(p, (byte) (rank(p) | BOTTOM));
+
+            // Connect to the top virtual site
+            if (i == 1) union(p, 0);
+
+            if (i > 1) { // Connect to the top site
+                long q = p - n;
+                if (isOpened(q)) union(p, q);
+            }
+            if (i < n) { // Connect to the bottom site
+                long q = p + n;
+                if (isOpened(q)) union(p, q);
+            }
+            if (j > 1) { // Connect to the left site
+                long q = p - 1;
+                if (isOpened(q)) union(p, q);
+            }
+            if (j < n) { // Connect to the right site
+                long q = p + 1;
+                if (isOpened(q)) union(p, q);
+            }
+        }
+    }
+
+    /**
+     * Checks if the site is open.
+     *
+     * @param i row index (1 <= i <= n)
+     * @param j column index (1 <= j <= n)
+     */
+    public boolean isOpen(int i, int j) {
+        return isOpened(flattenIndexes(i, j));
+    }
+
+    /**
+     * Checks if the site is full (connected to the top row).
+     *
+     * @param i row index (1 <= i <= n)
+     * @param j column index (1 <= j <= n)
+     */
+    public boolean isFull(int i, int j) {
+        long p = flattenIndexes(i, j);
+        return isOpened(p) && find(p) == find(0);
+    }
+
+    /**
+     * Checks if the system percolates.
+     */
+    public boolean percolates() {
+        return (rank(find(0)) & BOTTOM) != 0;
+    }
+
+    private long flattenIndexes(int i, int j) {
+        if (i < 1 || i > n) {
+            throw new IndexOutOfBoundsException("Row index i out of bounds");
+        }
+        if (j < 1 || j > n) {
+            throw new IndexOutOfBoundsException("Column index j out of bounds");
+        }
+        return (long) (i - 1) * n + j;
+    }
+
+    private boolean isOpened(long p) {
+        return (siteOpened[(int) (p >>> 6)] & (1L << p)) != 0;
+    }
+
+    private void setOpened(long p) {
+        siteOpened[(int) (p >>> 6)] |= 1L << p;
+    }
+
+    private long find(long p) {
+        // Path halving: point every other site on the path
+        // to its grandparent
+        long parent = parent(p);
+        while (parent != p) {
+            long grandparent = parent(parent);
+            if (grandparent != parent) setParent(p, grandparent);
+            p = grandparent;
+            parent = parent(p);
+        }
+        return p;
+    }
+
+    private void union(long p, long q) {
+        long pRoot = find(p);
+        long qRoot = find(q);
+        if (pRoot == qRoot) return;
+
+        byte pRank = rank(pRoot);
+        byte qRank = rank(qRoot);
+        byte bottom = (byte) ((pRank | qRank) & BOTTOM);
+
+        // Make the root of lower rank point to the other one
+        int pOrder = pRank & RANK_MASK;
+        int qOrder = qRank & RANK_MASK;
+        if (pOrder < qOrder) {
+            setParent(pRoot, qRoot);
+            setRank(qRoot, (byte) (qOrder | bottom));
+        } else {
+            setParent(qRoot, pRoot);
+            if (pOrder == qOrder) pOrder++;
+            setRank(pRoot, (byte) (pOrder | bottom));
+        }
+    }
+
+    private long parent(long p) {
+        long offset = p << 3;
+        long link = siteParent[(int) (offset >>> SEGMENT_SHIFT)]
+                .getLong((int) (offset & ((1L << SEGMENT_SHIFT) - 1)));
+        return link == 0 ? p : link - 1;
+    }
+
+    private void setParent(long p, long parent) {
+        long offset = p << 3;
+        siteParent[(int) (offset >>> SEGMENT_SHIFT)]
+                .putLong((int) (offset & ((1L << SEGMENT_SHIFT) - 1)),
+                        parent + 1);
+    }
+
+    private byte rank(long p) {
+        return siteRank[(int) (p >>> SEGMENT_SHIFT)]
+                .get((int) (p & ((1L << SEGMENT_SHIFT) - 1)));
+    }
+
+    private void setRank(long p, byte rank) {
+        siteRank[(int) (p >>> SEGMENT_SHIFT)]
+                .put((int) (p & ((1L << SEGMENT_SHIFT) - 1)), rank);
+    }
+
+    /**
+     * Maps a region of the file as segments of at most 1 GB each, since
+     * a single buffer is limited to int offsets. Segments are aligned
+     * to 8 bytes, so no long value crosses a segment boundary.
+     */
+    private static MappedByteBuffer[] map(FileChannel channel, long position,
+            long length) throws IOException {
+        long segmentSize = 1L << SEGMENT_SHIFT;
+        int segments = toIntExact((length + segmentSize - 1) / segmentSize);
+
+        MappedByteBuffer[] buffers = new MappedByteBuffer[segments];
+        for (int s = 0; s < segments; s++) {
+            long offset = s * segmentSize;
+            buffers[s] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    position + offset, Math.min(segmentSize, length - offset));
+        }
+        return buffers;
+    }
+
+    private static int toIntExact(long value) {
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Grid is too large");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Client of the class. Opens random sites until the system
+     * percolates and prints the percolation threshold.
+     *
+     * % java LargePercolation n [seed]
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            throw new IllegalArgumentException(
+                    "Provide n and optionally seed");
+        }
+
+        int n = Integer.parseInt(args[0]);
+        Random random = new Random();
+        if (args.length > 1) {
+            random.setSeed(Long.parseLong(args[1]));
+        }
+
+        LargePercolation percolation = new LargePercolation(n);
+        long openedSites = 0;
+        while (!percolation.percolates()) {
+            int rowIndex = random.nextInt(n) + 1;
+            int columnIndex = random.nextInt(n) + 1;
+
+            if (!percolation.isOpen(rowIndex, columnIndex)) {
+                percolation.open(rowIndex, columnIndex);
+                openedSites++;
+            }
+        }
+        StdOut.println("threshold\t= " + ((double) openedSites) / n / n);
+    }
+
+}
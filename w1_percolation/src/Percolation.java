@@ -3,7 +3,7 @@
  *  Written:       8/19/2012
  *  Last updated:  8/19/2012
  *
- *  Dependencies: WeightedQuickUnionUF.java
+ *  Dependencies: PercolationMetrics.java
  *
  *  Model of a percolation system
  *
@@ -11,18 +11,49 @@
 
 public class Percolation {
 
-    private static final int VIRTUAL_SITES = 1;
+    /**
+     * Receiver of sites that become full.
+     */
+    public interface FullSiteListener {
+        /**
+         * Called when the site gets connected to the top row.
+         *
+         * @param i row index (1 <= i <= n)
+         * @param j column index (1 <= j <= n)
+         */
+        void siteFilled(int i, int j);
+    }
+
+    private static final byte OPENED = 1; // The site is opened
+    private static final byte TOP = 2; // The tree rooted at the site is
+                                       // connected to the top row
+    private static final byte BOTTOM = 4; // The tree rooted at the site is
+                                          // connected to the bottom row
 
     private int n; // A percolation system is modeled using an n x n grid
     private int size; // Total number of sites in the system
-                      // plus virtual sites
+    private int openedSites; // Number of opened sites
+    private boolean percolated; // Indicates if the system percolates
+
+    private byte[] siteState; // Indicates if a site is opened and, for
+                              // roots, if its tree is connected to the
+                              // top and the bottom rows
+    private int[] siteParent; // Parent links of a weighted quick-union
+                              // algorithm with path halving
+    private int[] siteTreeSize; // Number of sites in a tree rooted
+                                // at the site
+
+    private PercolationMetrics metrics; // Counters of work done, null
+                                        // unless metrics are enabled
 
-    private boolean[] siteOpened; // Indicated if a site is opened
-    private boolean[] siteConnectedToBottom; // Indicated if a site is
-                                             // connected to the bottom row
-    private WeightedQuickUnionUF siteUnioned; // Implementation of a
-                                              // weighted quick-union
-                                              // algorithm
+    private FullSiteListener fullSiteListener; // Receiver of full sites
+    private int[] siteNextInCluster; // Circular lists of sites of
+                                     // a cluster, null without a listener
+
+    private int[] clusterSizeCount; // Number of clusters of every size,
+                                    // null unless statistics are kept
+    private int clusters; // Number of clusters of opened sites
+    private int largestCluster; // Size of the largest cluster
 
     /**
      * Creates an empty percolation system with all sites blocked.
@@ -31,16 +62,110 @@ public class Percolation {
      */
     public Percolation(int n) {
         this.n = n;
-        this.size = n * n + VIRTUAL_SITES;
+        this.size = n * n;
+
+        this.siteState = new byte[this.size];
+        this.siteParent = new int[this.size];
+        this.siteTreeSize = new int[this.size];
+        if (PercolationMetrics.ENABLED) {
+            this.metrics = new PercolationMetrics();
+        }
+
+        reset();
+    }
+
+    /**
+     * Blocks all sites again, so that the system can be reused for
+     * another experiment without allocating a new one.
+     */
+    public void reset() {
+        for (int p = 0; p < size; p++) {
+            siteState[p] = 0;
+            siteParent[p] = p;
+            siteTreeSize[p] = 1;
+        }
+        if (siteNextInCluster != null) {
+            for (int p = 0; p < size; p++) {
+                siteNextInCluster[p] = p;
+            }
+        }
 
-        this.siteOpened = new boolean[this.size];
-        this.siteConnectedToBottom = new boolean[this.size];
-        this.siteUnioned = new WeightedQuickUnionUF(this.size);
+        openedSites = 0;
+        percolated = false;
+        if (clusterSizeCount != null) {
+            for (int s = 0; s < clusterSizeCount.length; s++) {
+                clusterSizeCount[s] = 0;
+            }
+        }
+        clusters = 0;
+        largestCluster = 0;
 
-        this.siteOpened[0] = true;
+        // Every site is a root until opened, so the rows' sites carry
+        // the flags of their own trees
         for (int j = 1; j <= n; j++) {
-            int p = flattenIndexes(n, j);
-            this.siteConnectedToBottom[p] = true;
+            siteState[flattenIndexes(1, j)] |= TOP;
+            siteState[flattenIndexes(n, j)] |= BOTTOM;
+        }
+    }
+
+    /**
+     * Sets the receiver of sites that become full from now on, or removes
+     * it if null. While a receiver is set, the system keeps the list of
+     * sites of every cluster, so that the sites of a cluster getting
+     * connected to the top are reported in time proportional to their
+     * number.
+     *
+     * @param listener the receiver of full sites
+     */
+    public void setFullSiteListener(FullSiteListener listener) {
+        this.fullSiteListener = listener;
+        if (listener == null) {
+            siteNextInCluster = null;
+            return;
+        }
+        if (siteNextInCluster != null) {
+            return;
+        }
+
+        // Build the lists of the clusters opened so far
+        siteNextInCluster = new int[size];
+        for (int p = 0; p < size; p++) {
+            siteNextInCluster[p] = p;
+        }
+        for (int p = 0; p < size; p++) {
+            int root = find(p);
+            if ((siteState[p] & OPENED) != 0 && root != p) {
+                siteNextInCluster[p] = siteNextInCluster[root];
+                siteNextInCluster[root] = p;
+            }
+        }
+    }
+
+    /**
+     * Starts or stops keeping statistics of cluster sizes. While they are
+     * kept, every union updates the number of clusters of every size and
+     * the largest size in O(1), so that they can be queried at every step
+     * of an experiment without scanning the sites.
+     *
+     * @param enabled indicates if statistics are kept
+     */
+    public void setClusterStatistics(boolean enabled) {
+        if (!enabled) {
+            clusterSizeCount = null;
+            return;
+        }
+        if (clusterSizeCount != null) {
+            return;
+        }
+
+        // Count the clusters opened so far
+        clusterSizeCount = new int[size + 1];
+        clusters = 0;
+        largestCluster = 0;
+        for (int p = 0; p < size; p++) {
+            if ((siteState[p] & OPENED) != 0 && siteParent[p] == p) {
+                addCluster(siteTreeSize[p]);
+            }
         }
     }
 
@@ -53,27 +178,34 @@ public class Percolation {
     public void open(int i, int j) {
         int p = flattenIndexes(i, j);
 
-        if (!siteOpened[p]) {
-            siteOpened[p] = true;
+        if ((siteState[p] & OPENED) == 0) {
+            siteState[p] |= OPENED;
+            openedSites++;
+            if (PercolationMetrics.ENABLED) metrics.recordOpen();
+            if (clusterSizeCount != null) addCluster(1);
 
-            // Connect to the top virtual site
-            if (i == 1) union(p, 0);
+            if (i == 1 && fullSiteListener != null) {
+                fullSiteListener.siteFilled(i, j);
+            }
+            if ((siteState[p] & (TOP | BOTTOM)) == (TOP | BOTTOM)) {
+                percolated = true; // The only site of a 1 x 1 system
+            }
 
             if (i > 1) { // Connect to the top site
                 int q = flattenIndexes(i - 1, j);
-                if (siteOpened[q]) union(p, q);
+                if ((siteState[q] & OPENED) != 0) union(p, q);
             }
             if (i < n) { // Connect to the bottom site
                 int q = flattenIndexes(i + 1, j);
-                if (siteOpened[q]) union(p, q);
+                if ((siteState[q] & OPENED) != 0) union(p, q);
             }
             if (j > 1) { // Connect to the left site
                 int q = flattenIndexes(i, j - 1);
-                if (siteOpened[q]) union(p, q);
+                if ((siteState[q] & OPENED) != 0) union(p, q);
             }
             if (j < n) { // Connect to the right site
                 int q = flattenIndexes(i, j + 1);
-                if (siteOpened[q]) union(p, q);
+                if ((siteState[q] & OPENED) != 0) union(p, q);
             }
         }
     }
@@ -86,7 +218,7 @@ public class Percolation {
      */
     public boolean isOpen(int i, int j) {
         int p = flattenIndexes(i, j);
-        return siteOpened[p];
+        return (siteState[p] & OPENED) != 0;
     }
 
     /**
@@ -97,15 +229,76 @@ public class Percolation {
      */
     public boolean isFull(int i, int j) {
         int p = flattenIndexes(i, j);
-        return siteOpened[p] && siteUnioned.connected(p, 0);
+        return (siteState[p] & OPENED) != 0
+                && (siteState[find(p)] & TOP) != 0;
     }
 
     /**
      * Checks if the system percolates.
      */
     public boolean percolates() {
-        int rootOfVirtualTop = siteUnioned.find(0);
-        return siteConnectedToBottom[rootOfVirtualTop];
+        return percolated;
+    }
+
+    /**
+     * Returns the number of opened sites.
+     */
+    public int numberOfOpenSites() {
+        return openedSites;
+    }
+
+    /**
+     * Returns the number of clusters of opened sites.
+     *
+     * @throws IllegalStateException unless cluster statistics are kept
+     */
+    public int clusterCount() {
+        checkClusterStatistics();
+        return clusters;
+    }
+
+    /**
+     * Returns the number of clusters of the given size.
+     *
+     * @param s the size of clusters (1 <= s <= n * n)
+     * @throws IllegalStateException unless cluster statistics are kept
+     */
+    public int clusterCount(int s) {
+        checkClusterStatistics();
+        if (s < 1 || s > size) {
+            throw new IndexOutOfBoundsException("Cluster size out of bounds");
+        }
+        return clusterSizeCount[s];
+    }
+
+    /**
+     * Returns the size of the largest cluster, or zero if no site is
+     * opened.
+     *
+     * @throws IllegalStateException unless cluster statistics are kept
+     */
+    public int largestClusterSize() {
+        checkClusterStatistics();
+        return largestCluster;
+    }
+
+    /**
+     * Returns the mean size of clusters, or zero if no site is opened.
+     *
+     * @throws IllegalStateException unless cluster statistics are kept
+     */
+    public double meanClusterSize() {
+        checkClusterStatistics();
+        return clusters == 0 ? 0.0 : ((double) openedSites) / clusters;
+    }
+
+    /**
+     * Returns the counters of work done since the system was created,
+     * or null unless the percolation.metrics system property is true.
+     * The counters are not cleared by reset().
+     */
+    public PercolationMetrics metrics() {
+        return metrics;
     }
 
     private int flattenIndexes(int i, int j) {
@@ -115,23 +308,98 @@ public class Percolation {
         if (j < 1 || j > n) {
             throw new IndexOutOfBoundsException("Column index j out of bounds");
         }
-        return (i - 1) * n + j;
+        return (i - 1) * n + j - 1;
+    }
+
+    private int find(int p) {
+        int length = 0;
+        while (p != siteParent[p]) {
+            // Path halving: point every other site on the path
+            // to its grandparent
+            siteParent[p] = siteParent[siteParent[p]];
+            p = siteParent[p];
+            if (PercolationMetrics.ENABLED) length++;
+        }
+        if (PercolationMetrics.ENABLED) metrics.recordFind(length);
+        return p;
     }
 
+    /**
+     * Unites trees of the sites by size. The roots carry the top and
+     * bottom flags, so the union needs a single find per site, and every
+     * tree is exactly one cluster of opened sites.
+     */
     private void union(int p, int q) {
-        connectRootsToBottom(p, q);
-        siteUnioned.union(p, q);
+        int pRoot = find(p);
+        int qRoot = find(q);
+        if (pRoot == qRoot) return;
+        if (PercolationMetrics.ENABLED) metrics.recordUnion();
+
+        if (fullSiteListener != null) {
+            joinClusterLists(pRoot, qRoot);
+        }
+        if (clusterSizeCount != null) {
+            removeCluster(siteTreeSize[pRoot]);
+            removeCluster(siteTreeSize[qRoot]);
+            addCluster(siteTreeSize[pRoot] + siteTreeSize[qRoot]);
+        }
+
+        int flags = (siteState[pRoot] | siteState[qRoot]) & (TOP | BOTTOM);
+        if (flags == (TOP | BOTTOM)) percolated = true;
+
+        // Make smaller root point to larger one
+        if (siteTreeSize[pRoot] < siteTreeSize[qRoot]) {
+            siteParent[pRoot] = qRoot;
+            siteTreeSize[qRoot] += siteTreeSize[pRoot];
+            siteState[qRoot] |= flags;
+        } else {
+            siteParent[qRoot] = pRoot;
+            siteTreeSize[pRoot] += siteTreeSize[qRoot];
+            siteState[pRoot] |= flags;
+        }
     }
 
-    private void connectRootsToBottom(int p, int q) {
-        int pRoot = siteUnioned.find(p);
-        int qRoot = siteUnioned.find(q);
+    /**
+     * Splices the lists of sites of two clusters and reports the sites
+     * of the cluster that gets connected to the top through the other.
+     */
+    private void joinClusterLists(int pRoot, int qRoot) {
+        boolean pFull = (siteState[pRoot] & TOP) != 0;
+        boolean qFull = (siteState[qRoot] & TOP) != 0;
+        if (pFull && !qFull) {
+            reportFullSites(qRoot);
+        } else if (qFull && !pFull) {
+            reportFullSites(pRoot);
+        }
 
-        boolean anyOfRootsConnectedToBottom = siteConnectedToBottom[pRoot]
-                || siteConnectedToBottom[qRoot];
+        int next = siteNextInCluster[pRoot];
+        siteNextInCluster[pRoot] = siteNextInCluster[qRoot];
+        siteNextInCluster[qRoot] = next;
+    }
+
+    private void reportFullSites(int root) {
+        int p = root;
+        do {
+            fullSiteListener.siteFilled(p / n + 1, p % n + 1);
+            p = siteNextInCluster[p];
+        } while (p != root);
+    }
 
-        siteConnectedToBottom[pRoot] = anyOfRootsConnectedToBottom;
-        siteConnectedToBottom[qRoot] = anyOfRootsConnectedToBottom;
+    private void addCluster(int s) {
+        clusterSizeCount[s]++;
+        clusters++;
+        if (s > largestCluster) largestCluster = s;
+    }
+
+    private void removeCluster(int s) {
+        clusterSizeCount[s]--;
+        clusters--;
+    }
+
+    private void checkClusterStatistics() {
+        if (clusterSizeCount == null) {
+            throw new IllegalStateException("Cluster statistics are not kept");
+        }
     }
 
 }
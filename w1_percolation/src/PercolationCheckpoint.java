@@ -0,0 +1,209 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       8/19/2012
+ *  Last updated:  8/19/2012
+ *
+ *  Dependencies: PercolationStats.java
+ *
+ *  Binary log of completed trials of a series of experiments that
+ *  lets an interrupted series resume
+ *
+ *----------------------------------------------------------------*/
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class PercolationCheckpoint implements Closeable {
+
+    private static final int MAGIC = 0x50435032; // "PCP2"
+    private static final int HEADER_BYTES = 24; // Magic, n, t, seed
+                                                // and sampling
+    private static final int RECORD_BYTES = 8; // Trial and open sites
+                                               // at which it percolated
+
+    private static final int BUFFER_BYTES = RECORD_BYTES * 4096;
+    private static final long FLUSH_NANOS = 1000000000L; // Write buffered
+                                                         // records at
+                                                         // least every
+                                                         // second
+
+    private int t; // The number of experiments of the series
+    private FileChannel channel; // The checkpoint file
+    private ByteBuffer buffer; // Records not written yet
+    private long lastFlush; // Time of the last write
+
+    /**
+     * Opens the checkpoint file of a series of experiments, creating it
+     * if it does not exist. Random streams of trials are derived from
+     * the seed and the trial number, so the header together with
+     * the completed trials is the whole state of the series. A file
+     * shorter than the header was cut off while it was being created,
+     * before any trial was logged, so it is started over.
+     *
+     * @param file the checkpoint file
+     * @param n the size of the grid
+     * @param t the number of experiments
+     * @param seed the seed of the experiments
+     * @param sampling the way of choosing sites to open
+     * @throws IOException if the file cannot be read or written
+     * @throws IllegalArgumentException if the file belongs to another
+     *         series of experiments
+     */
+    public PercolationCheckpoint(File file, int n, int t, long seed,
+            PercolationStats.Sampling sampling) throws IOException {
+        this.t = t;
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(n).putInt(t).putLong(seed)
+                .putInt(sampling.ordinal());
+        header.flip();
+
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                channel.truncate(0);
+                writeFully(header);
+                channel.force(false);
+            } else {
+                ByteBuffer existing = ByteBuffer.allocate(HEADER_BYTES);
+                readFully(existing, 0);
+                existing.flip();
+                if (!existing.equals(header)) {
+                    throw new IllegalArgumentException("Checkpoint "
+                            + file + " belongs to another experiment");
+                }
+            }
+            channel.position(channel.size());
+        } catch (IOException e) {
+            closeAfter(e);
+            throw e;
+        } catch (RuntimeException e) {
+            closeAfter(e);
+            throw e;
+        }
+        this.lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Reads completed trials into the arrays and returns their number.
+     * A record torn by an interrupted write is dropped.
+     *
+     * @param openedSites open sites at which each trial percolated
+     * @param completed indicates if a trial is completed
+     * @throws IOException if the file cannot be read
+     */
+    public int restore(int[] openedSites, boolean[] completed)
+            throws IOException {
+        long records = (channel.size() - HEADER_BYTES) / RECORD_BYTES;
+        long end = HEADER_BYTES + records * RECORD_BYTES;
+        channel.truncate(end);
+
+        int restored = 0;
+        ByteBuffer chunk = ByteBuffer.allocate(BUFFER_BYTES);
+        for (long position = HEADER_BYTES; position < end;
+                position += chunk.limit()) {
+            chunk.clear();
+            chunk.limit((int) Math.min(BUFFER_BYTES, end - position));
+            readFully(chunk, position);
+            chunk.flip();
+
+            while (chunk.hasRemaining()) {
+                int trial = chunk.getInt();
+                int opened = chunk.getInt();
+                if (trial < 0 || trial >= t) {
+                    throw new IOException("Trial " + trial
+                            + " out of bounds in checkpoint");
+                }
+                if (!completed[trial]) {
+                    completed[trial] = true;
+                    openedSites[trial] = opened;
+                    restored++;
+                }
+            }
+        }
+        channel.position(end);
+        return restored;
+    }
+
+    /**
+     * Appends a completed trial. Records are buffered and written when
+     * the buffer fills up or a second has passed since the last write.
+     *
+     * @param trial the trial number
+     * @param openedSites open sites at which the trial percolated
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void append(int trial, int openedSites)
+            throws IOException {
+        buffer.putInt(trial).putInt(openedSites);
+        if (!buffer.hasRemaining()
+                || System.nanoTime() - lastFlush > FLUSH_NANOS) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes buffered records to the file and forces them to the disk,
+     * so that trials flushed survive a crash of the system.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+        channel.force(false);
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Writes buffered records and closes the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } catch (IOException e) {
+            closeAfter(e);
+            throw e;
+        } catch (RuntimeException e) {
+            closeAfter(e);
+            throw e;
+        }
+        channel.close();
+    }
+
+    /**
+     * Closes the file after the failure, keeping a failure to close as
+     * suppressed by it.
+     */
+    private void closeAfter(Exception failure) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    private void readFully(ByteBuffer target, long position)
+            throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position + target.position());
+            if (read < 0) break;
+        }
+    }
+
+}
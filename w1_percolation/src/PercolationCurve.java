@@ -0,0 +1,147 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       8/19/2012
+ *  Last updated:  8/19/2012
+ *
+ *  Dependencies: PercolationStats.java
+ *
+ *  Spanning probability curve of a percolation system estimated
+ *  with the Newman-Ziff algorithm
+ *
+ *----------------------------------------------------------------*/
+
+public class PercolationCurve {
+
+    private int sites; // Total number of sites in the system
+    private double[] spanning; // Fraction of trials that percolate
+                               // with the given number of open sites
+
+    /**
+     * Estimates the spanning probability of a n x n percolation system
+     * for every number of open sites from t experiments.
+     *
+     * @param n the size of the grid
+     * @param t the number of experiments
+     */
+    public PercolationCurve(int n, int t) {
+        this(n, t, StdRandom.uniform(Integer.MAX_VALUE), 1);
+    }
+
+    /**
+     * Estimates the spanning probability of a n x n percolation system
+     * for every number of open sites from t experiments run on
+     * the given number of threads.
+     * <p>
+     * Every experiment opens sites in the order of a random permutation
+     * and notes the number of open sites at which the system percolates.
+     * The system keeps percolating once it does, so that single number
+     * tells for each occupancy of the sweep whether the system percolates.
+     *
+     * @param n the size of the grid
+     * @param t the number of experiments
+     * @param seed the seed of the experiments
+     * @param threads the number of worker threads
+     */
+    public PercolationCurve(int n, int t, long seed, int threads) {
+        PercolationStats stats = new PercolationStats(n, t, seed, threads,
+                PercolationStats.Sampling.PERMUTATION);
+
+        this.sites = n * n;
+        this.spanning = new double[this.sites + 1];
+
+        int[] percolatedAt = new int[this.sites + 1];
+        for (int opened : stats.openedSites()) {
+            percolatedAt[opened]++;
+        }
+
+        int percolated = 0;
+        for (int m = 0; m <= this.sites; m++) {
+            percolated += percolatedAt[m];
+            this.spanning[m] = ((double) percolated) / t;
+        }
+    }
+
+    /**
+     * Returns the probability that the system percolates with exactly
+     * m open sites.
+     *
+     * @param m the number of open sites (0 <= m <= n * n)
+     */
+    public double probability(int m) {
+        if (m < 0 || m > sites) {
+            throw new IndexOutOfBoundsException("Number of open sites m "
+                    + "out of bounds");
+        }
+        return spanning[m];
+    }
+
+    /**
+     * Returns the probability that the system percolates when every site
+     * is open with probability p. It is the convolution of the spanning
+     * probabilities with the binomial distribution of open sites.
+     *
+     * @param p the probability of a site to be open (0 <= p <= 1)
+     */
+    public double probability(double p) {
+        if (p < 0.0 || p > 1.0) {
+            throw new IllegalArgumentException("Only p in [0, 1] allowed");
+        }
+        if (p == 0.0) return spanning[0];
+        if (p == 1.0) return spanning[sites];
+
+        // Binomial weights relative to the weight of the most likely
+        // number of open sites, walking away from it in both directions
+        // until the weights become negligible
+        int mode = (int) Math.min(sites, Math.floor((sites + 1) * p));
+        double odds = p / (1.0 - p);
+
+        double weights = 1.0;
+        double sum = spanning[mode];
+
+        double weight = 1.0;
+        for (int m = mode; m < sites && weight > 1e-16; m++) {
+            weight *= odds * (sites - m) / (m + 1);
+            weights += weight;
+            sum += weight * spanning[m + 1];
+        }
+
+        weight = 1.0;
+        for (int m = mode; m > 0 && weight > 1e-16; m--) {
+            weight *= m / (odds * (sites - m + 1));
+            weights += weight;
+            sum += weight * spanning[m - 1];
+        }
+
+        return sum / weights;
+    }
+
+    /**
+     * Client of the class.
+     *
+     * % java PercolationCurve n t [threads [seed]]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 4) {
+            throw new IllegalArgumentException(
+                    "Provide n, t and optionally threads and seed");
+        }
+
+        int n = Integer.parseInt(args[0]);
+        int t = Integer.parseInt(args[1]);
+        int threads = 1;
+        if (args.length > 2) {
+            threads = Integer.parseInt(args[2]);
+        }
+        long seed = StdRandom.uniform(Integer.MAX_VALUE);
+        if (args.length > 3) {
+            seed = Long.parseLong(args[3]);
+        }
+
+        PercolationCurve curve = new PercolationCurve(n, t, seed, threads);
+        for (int i = 50; i <= 70; i++) {
+            double p = i / 100.0;
+            StdOut.println(p + "\t" + curve.probability(p));
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       8/19/2012
+ *  Last updated:  8/19/2012
+ *
+ *  Dependencies: None
+ *
+ *  Counters of work done by percolation experiments
+ *
+ *----------------------------------------------------------------*/
+
+public class PercolationMetrics {
+
+    /**
+     * Indicates if counters are collected. It is read once from
+     * the percolation.metrics system property, and since it is constant
+     * the JIT drops the counting code when it is false.
+     */
+    public static final boolean ENABLED =
+            Boolean.getBoolean("percolation.metrics");
+
+    private long opens; // Sites opened
+    private long unions; // Union operations
+    private long finds; // Find operations
+    private long pathLength; // Parent links followed by finds
+    private long maxPathLength; // Longest path followed by a find
+    private long rejectedSamples; // Random sites drawn that were already
+                                  // open
+    private long trials; // Experiments performed
+    private long trialNanos; // Time spent in experiments
+    private long maxTrialNanos; // Longest experiment
+
+    /**
+     * Returns the number of opened sites.
+     */
+    public long opens() {
+        return opens;
+    }
+
+    /**
+     * Returns the number of union operations.
+     */
+    public long unions() {
+        return unions;
+    }
+
+    /**
+     * Returns the number of find operations.
+     */
+    public long finds() {
+        return finds;
+    }
+
+    /**
+     * Returns the mean number of parent links followed by a find.
+     */
+    public double meanPathLength() {
+        return finds == 0 ? 0.0 : ((double) pathLength) / finds;
+    }
+
+    /**
+     * Returns the longest path followed by a find.
+     */
+    public long maxPathLength() {
+        return maxPathLength;
+    }
+
+    /**
+     * Returns the number of random sites drawn that were already open.
+     */
+    public long rejectedSamples() {
+        return rejectedSamples;
+    }
+
+    /**
+     * Returns the number of experiments performed.
+     */
+    public long trials() {
+        return trials;
+    }
+
+    /**
+     * Returns the mean time of an experiment in nanoseconds.
+     */
+    public double meanTrialNanos() {
+        return trials == 0 ? 0.0 : ((double) trialNanos) / trials;
+    }
+
+    /**
+     * Returns the longest time of an experiment in nanoseconds.
+     */
+    public long maxTrialNanos() {
+        return maxTrialNanos;
+    }
+
+    /** Counts an opened site. */
+    void recordOpen() {
+        opens++;
+    }
+
+    /** Counts a union operation. */
+    void recordUnion() {
+        unions++;
+    }
+
+    /** Counts a find that followed the given number of parent links. */
+    void recordFind(long length) {
+        finds++;
+        pathLength += length;
+        if (length > maxPathLength) maxPathLength = length;
+    }
+
+    /** Counts a random site drawn that was already open. */
+    void recordRejectedSample() {
+        rejectedSamples++;
+    }
+
+    /** Counts an experiment that took the given time. */
+    void recordTrial(long nanos) {
+        trials++;
+        trialNanos += nanos;
+        if (nanos > maxTrialNanos) maxTrialNanos = nanos;
+    }
+
+    /**
+     * Adds the counters of other metrics to these.
+     *
+     * @param other the metrics to add
+     */
+    public void add(PercolationMetrics other) {
+        opens += other.opens;
+        unions += other.unions;
+        finds += other.finds;
+        pathLength += other.pathLength;
+        maxPathLength = Math.max(maxPathLength, other.maxPathLength);
+        rejectedSamples += other.rejectedSamples;
+        trials += other.trials;
+        trialNanos += other.trialNanos;
+        maxTrialNanos = Math.max(maxTrialNanos, other.maxTrialNanos);
+    }
+
+    /**
+     * Returns the counters as a JSON object.
+     */
+    @Override
+    public String toString() {
+        return "{\"opens\": " + opens
+                + ", \"unions\": " + unions
+                + ", \"finds\": " + finds
+                + ", \"meanPathLength\": " + meanPathLength()
+                + ", \"maxPathLength\": " + maxPathLength
+                + ", \"rejectedSamples\": " + rejectedSamples
+                + ", \"trials\": " + trials
+                + ", \"meanTrialNanos\": " + meanTrialNanos()
+                + ", \"maxTrialNanos\": " + maxTrialNanos + "}";
+    }
+
+}
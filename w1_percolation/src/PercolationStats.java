@@ -3,15 +3,57 @@
  *  Written:       8/19/2012
  *  Last updated:  8/19/2012
  *
- *  Dependencies: Percolation.java
+ *  Dependencies: Percolation.java PercolationMetrics.java
+ *                PercolationCheckpoint.java
  *
  *  Performer of a series of computational experiments
  *
  *----------------------------------------------------------------*/
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class PercolationStats {
 
-    private double[] thresholds; // Percolation thresholds
+    /**
+     * Ways of choosing the next site to open.
+     */
+    public enum Sampling {
+        /** Draws random sites and skips the ones already opened. */
+        REJECTION,
+        /** Opens sites in the order of a lazily shuffled permutation. */
+        PERMUTATION
+    }
+
+    private static final int MIN_ADAPTIVE_TRIALS = 30; // Trials before
+                                                       // the interval
+                                                       // is trusted
+
+    private int n; // The size of the grid
+    private long seed; // The seed all trial random streams derive from
+    private Sampling sampling; // The way of choosing sites to open
+
+    private int trials; // The number of performed experiments
+    private double mean; // The sample mean
+    private double stddev; // The sample standard deviation
+    private int[] openedSites; // Open sites at which each trial
+                               // percolated, null if the number
+                               // of trials is adaptive
+    private PercolationMetrics metrics; // Counters of work done, null
+                                        // unless metrics are enabled
+
+    private PercolationCheckpoint checkpoint; // Log of completed trials,
+                                              // null if not kept
+    private boolean[] completed; // Indicates if a trial is restored
+                                 // from the checkpoint
 
     /**
      * Performs t experiments on a n x n percolation system.
@@ -20,32 +62,191 @@ public class PercolationStats {
      * @param t the number of experiments
      */
     public PercolationStats(int n, int t) {
-        if (n <= 0) {
-            throw new IllegalArgumentException("Only positive N allowed");
-        }
+        this(n, t, StdRandom.uniform(Integer.MAX_VALUE), 1);
+    }
+
+    /**
+     * Performs t experiments on a n x n percolation system using
+     * the given number of threads and rejection sampling of sites.
+     *
+     * @param n the size of the grid
+     * @param t the number of experiments
+     * @param seed the seed of the experiments
+     * @param threads the number of worker threads
+     */
+    public PercolationStats(int n, int t, long seed, int threads) {
+        this(n, t, seed, threads, Sampling.REJECTION);
+    }
+
+    /**
+     * Performs t experiments on a n x n percolation system using
+     * the given number of threads. Every trial draws sites from its own
+     * random stream derived from the seed and the trial number, so the
+     * results depend on the seed only and not on the number of threads.
+     *
+     * @param n the size of the grid
+     * @param t the number of experiments
+     * @param seed the seed of the experiments
+     * @param threads the number of worker threads
+     * @param sampling the way of choosing sites to open
+     */
+    public PercolationStats(int n, int t, long seed, int threads,
+            Sampling sampling) {
+        this(n, t, seed, threads, sampling, null);
+    }
+
+    /**
+     * Performs t experiments on a n x n percolation system using
+     * the given number of threads, logging completed trials to
+     * the checkpoint file. If the file holds trials of the same series
+     * of experiments, those trials are not performed again.
+     *
+     * @param n the size of the grid
+     * @param t the number of experiments
+     * @param seed the seed of the experiments
+     * @param threads the number of worker threads
+     * @param sampling the way of choosing sites to open
+     * @param checkpointFile the checkpoint file, or null for none
+     * @throws IllegalArgumentException if the checkpoint file belongs to
+     *         another series of experiments
+     * @throws IllegalStateException if the checkpoint file cannot be
+     *         read or written
+     */
+    public PercolationStats(int n, int t, long seed, int threads,
+            Sampling sampling, File checkpointFile) {
         if (t <= 0) {
             throw new IllegalArgumentException("Only positive T allowed");
         }
+        initialize(n, seed, threads, sampling);
+
+        this.openedSites = new int[t];
+        Worker[] workers = createWorkers(threads);
+        ExecutorService executor = null;
+        Throwable failure = null; // Kept, so that a failure to close
+                                  // the checkpoint does not hide it
+        try {
+            if (checkpointFile != null) {
+                this.checkpoint = new PercolationCheckpoint(checkpointFile,
+                        n, t, seed, sampling);
+                this.completed = new boolean[t];
+                this.checkpoint.restore(this.openedSites, this.completed);
+            }
 
-        this.thresholds = new double[t];
-        for (int i = 0; i < t; ++i) {
-            Percolation percolation = new Percolation(n);
+            executor = createExecutor(threads);
+            runTrials(this.openedSites, 0, workers, executor);
+        } catch (IOException e) {
+            IllegalStateException wrapped =
+                    new IllegalStateException("Checkpoint failed", e);
+            failure = wrapped;
+            throw wrapped;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } catch (Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            shutdown(executor);
+            closeCheckpoint(failure);
+        }
+        collectMetrics(workers);
 
-            int openedSites = 0;
+        summarize();
+    }
+
+    /**
+     * Wraps results of t experiments on a n x n percolation system
+     * performed elsewhere, such as in a sweep over many grid sizes.
+     *
+     * @param n the size of the grid
+     * @param openedSites open sites at which each trial percolated,
+     *        in the order of trials
+     * @param metrics counters of work done by the trials, or null
+     */
+    PercolationStats(int n, int[] openedSites, PercolationMetrics metrics) {
+        this.n = n;
+        this.openedSites = openedSites;
+        this.metrics = metrics;
+        summarize();
+    }
+
+    /**
+     * Creates the object to be filled by untilWidth.
+     */
+    private PercolationStats() { }
+
+    /**
+     * Performs experiments on a n x n percolation system until
+     * the 95% confidence interval gets narrower than the given width.
+     *
+     * @param n the size of the grid
+     * @param width the width of the confidence interval to reach
+     * @return the statistics of the experiments performed
+     */
+    public static PercolationStats untilWidth(int n, double width) {
+        return untilWidth(n, width, StdRandom.uniform(Integer.MAX_VALUE), 1,
+                Sampling.REJECTION);
+    }
+
+    /**
+     * Performs experiments on a n x n percolation system using the given
+     * number of threads until the 95% confidence interval gets narrower
+     * than the given width. The mean and the variance are updated online
+     * by Welford's method, so memory does not grow with the number
+     * of trials. Trials run in rounds of one trial per thread and their
+     * results are folded in the order of trials, so the number of trials
+     * and the results depend on the seed only.
+     *
+     * @param n the size of the grid
+     * @param width the width of the confidence interval to reach
+     * @param seed the seed of the experiments
+     * @param threads the number of worker threads
+     * @param sampling the way of choosing sites to open
+     * @return the statistics of the experiments performed
+     */
+    public static PercolationStats untilWidth(int n, double width, long seed,
+            int threads, Sampling sampling) {
+        if (!(width > 0.0)) {
+            throw new IllegalArgumentException("Only positive width allowed");
+        }
+        PercolationStats stats = new PercolationStats();
+        stats.initialize(n, seed, threads, sampling);
+        stats.runUntilWidth(width, threads);
+        return stats;
+    }
+
+    /**
+     * Performs rounds of trials until the confidence interval gets
+     * narrower than the width.
+     */
+    private void runUntilWidth(double width, int threads) {
+        int[] round = new int[threads];
+        double m2 = 0.0; // Sum of squared deviations from the mean
+
+        Worker[] workers = createWorkers(threads);
+        ExecutorService executor = createExecutor(threads);
+        try {
             while (true) {
-                int rowIndex = StdRandom.uniform(n) + 1;
-                int columnIndex = StdRandom.uniform(n) + 1;
+                runTrials(round, trials, workers, executor);
 
-                if (!percolation.isOpen(rowIndex, columnIndex)) {
-                    percolation.open(rowIndex, columnIndex);
-                    openedSites++;
+                for (int k = 0; k < round.length; k++) {
+                    double threshold = threshold(round[k]);
+                    trials++;
+                    double delta = threshold - mean;
+                    mean += delta / trials;
+                    m2 += delta * (threshold - mean);
 
-                    if (percolation.percolates()) {
-                        this.thresholds[i] = ((double) openedSites) / (n * n);
-                        break;
+                    if (trials >= MIN_ADAPTIVE_TRIALS) {
+                        stddev = Math.sqrt(m2 / (trials - 1));
+                        if (2 * 1.96 * stddev / Math.sqrt(trials) < width) {
+                            return;
+                        }
                     }
                 }
             }
+        } finally {
+            shutdown(executor);
+            collectMetrics(workers);
         }
     }
 
@@ -53,29 +254,331 @@ public class PercolationStats {
      * Returns the sample mean.
      */
     public double mean() {
-        return StdStats.mean(thresholds);
+        return mean;
     }
 
     /**
      * Returns the sample standard deviation.
      */
     public double stddev() {
-        return StdStats.stddev(thresholds);
+        return stddev;
     }
 
     /**
-     * Returns the 95% confidence interval.
+     * Returns the number of performed experiments.
+     */
+    public int trials() {
+        return trials;
+    }
+
+    /**
+     * Returns the counters of work done by all trials, or null unless
+     * the percolation.metrics system property is true. Trials run
+     * in a round beyond the one reaching the target width are counted
+     * as well.
+     */
+    public PercolationMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the numbers of open sites at which the trials percolated,
+     * in the order of trials. The thresholds are these counts divided
+     * by n^2.
+     *
+     * @throws IllegalStateException if the number of trials is adaptive
      */
-    private double[] confidence95Interval() {
-        double mean = mean();
-        double stddev = stddev();
+    int[] openedSites() {
+        if (openedSites == null) {
+            throw new IllegalStateException("Opened sites are not kept");
+        }
+        return openedSites.clone();
+    }
 
+    /**
+     * Returns the 95% confidence interval.
+     */
+    double[] confidence95Interval() {
         double[] interval = new double[2];
-        interval[0] = mean - 1.96 * stddev / Math.sqrt(thresholds.length);
-        interval[1] = mean + 1.96 * stddev / Math.sqrt(thresholds.length);
+        interval[0] = mean - 1.96 * stddev / Math.sqrt(trials);
+        interval[1] = mean + 1.96 * stddev / Math.sqrt(trials);
         return interval;
     }
 
+    private void initialize(int n, long seed, int threads,
+            Sampling sampling) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Only positive N allowed");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException(
+                    "Only positive number of threads allowed");
+        }
+        if (sampling == null) {
+            throw new NullPointerException("Sampling is null");
+        }
+
+        this.n = n;
+        this.seed = seed;
+        this.sampling = sampling;
+    }
+
+    /**
+     * Closes the checkpoint. A failure to close is added as suppressed
+     * to the failure of the experiments, if there is one, and thrown
+     * otherwise.
+     */
+    /**
+     * Computes the statistics of the thresholds of all trials.
+     */
+    private void summarize() {
+        double[] thresholds = new double[openedSites.length];
+        for (int k = 0; k < thresholds.length; k++) {
+            thresholds[k] = threshold(openedSites[k]);
+        }
+        this.trials = thresholds.length;
+        this.mean = StdStats.mean(thresholds);
+        this.stddev = StdStats.stddev(thresholds);
+    }
+
+    /**
+     * Returns the fraction of sites opened when the system percolated.
+     */
+    private double threshold(int opened) {
+        return ((double) opened) / (n * n);
+    }
+
+    private void closeCheckpoint(Throwable failure) {
+        if (checkpoint != null) {
+            try {
+                checkpoint.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    throw new IllegalStateException("Checkpoint failed", e);
+                }
+                failure.addSuppressed(e);
+            } finally {
+                checkpoint = null;
+                completed = null;
+            }
+        }
+    }
+
+    private void collectMetrics(Worker[] workers) {
+        if (PercolationMetrics.ENABLED) {
+            metrics = new PercolationMetrics();
+            for (Worker worker : workers) {
+                metrics.add(worker.metrics());
+            }
+        }
+    }
+
+    private Worker[] createWorkers(int threads) {
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(n, seed, sampling);
+        }
+        return workers;
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        if (threads == 1) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Fills the results with open sites at which the trials starting from
+     * the first trial percolated. Workers take the next unfinished trial
+     * from a shared counter, and each result is stored by its trial
+     * number.
+     */
+    private void runTrials(final int[] results, final int firstTrial,
+            Worker[] workers, ExecutorService executor) {
+        final AtomicInteger nextTrial = new AtomicInteger();
+        if (executor == null) {
+            runWorker(workers[0], results, firstTrial, nextTrial);
+            return;
+        }
+
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(workers.length);
+            for (final Worker worker : workers) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        runWorker(worker, results, firstTrial, nextTrial);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Experiments interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Experiment failed", e.getCause());
+        }
+    }
+
+    /**
+     * Derives the seed of a trial's random stream (SplitMix64 finalizer),
+     * so that streams of neighbouring trials are not correlated.
+     */
+    private static long trialSeed(long seed, int trial) {
+        long z = seed + (trial + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Performs the worker's share of trials taken from the shared counter,
+     * skipping the ones restored from the checkpoint.
+     */
+    private void runWorker(Worker worker, int[] results, int firstTrial,
+            AtomicInteger nextTrial) {
+        int k;
+        while ((k = nextTrial.getAndIncrement()) < results.length) {
+            if (completed != null && completed[firstTrial + k]) {
+                continue;
+            }
+
+            results[k] = worker.runTrial(firstTrial + k);
+            if (checkpoint != null) {
+                try {
+                    checkpoint.append(firstTrial + k, results[k]);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Checkpoint failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Performer of trials of a series on a single thread. It reuses its
+     * percolation system, random stream and permutation of sites across
+     * trials. Every trial depends on the series and its number only,
+     * so it gives the same result whichever worker performs it.
+     */
+    static class Worker {
+        private int n; // The size of the grid
+        private long seed; // The seed of the series
+        private Percolation percolation;
+        private Random random = new Random();
+        private int[] sites; // Permutation of sites, null for rejection
+                             // sampling
+
+        /**
+         * Creates a worker for trials of a series on a n x n grid.
+         *
+         * @param n the size of the grid
+         * @param seed the seed of the series
+         * @param sampling the way of choosing sites to open
+         */
+        public Worker(int n, long seed, Sampling sampling) {
+            this.n = n;
+            this.seed = seed;
+            this.percolation = new Percolation(n);
+            if (sampling == Sampling.PERMUTATION) {
+                sites = new int[n * n];
+            }
+        }
+
+        /**
+         * Performs the trial of the series and returns the number of open
+         * sites at which the system percolates.
+         *
+         * @param trial the trial number
+         */
+        public int runTrial(int trial) {
+            long start = 0;
+            if (PercolationMetrics.ENABLED) start = System.nanoTime();
+
+            random.setSeed(trialSeed(seed, trial));
+            percolation.reset();
+            int openedSites;
+            if (sites == null) {
+                openedSites = runRejectionTrial();
+            } else {
+                openedSites = runPermutationTrial();
+            }
+
+            if (PercolationMetrics.ENABLED) {
+                percolation.metrics().recordTrial(System.nanoTime() - start);
+            }
+            return openedSites;
+        }
+
+        /**
+         * Returns the counters of work done by the worker, or null unless
+         * metrics are enabled.
+         */
+        public PercolationMetrics metrics() {
+            return percolation.metrics();
+        }
+
+        /**
+         * Opens random sites until the system percolates and returns
+         * the number of opened sites.
+         */
+        private int runRejectionTrial() {
+            int openedSites = 0;
+            while (true) {
+                int rowIndex = random.nextInt(n) + 1;
+                int columnIndex = random.nextInt(n) + 1;
+
+                if (!percolation.isOpen(rowIndex, columnIndex)) {
+                    percolation.open(rowIndex, columnIndex);
+                    openedSites++;
+
+                    if (percolation.percolates()) {
+                        return openedSites;
+                    }
+                } else if (PercolationMetrics.ENABLED) {
+                    percolation.metrics().recordRejectedSample();
+                }
+            }
+        }
+
+        /**
+         * Opens sites in the order of a random permutation until
+         * the system percolates and returns the number of opened sites.
+         * The permutation is produced lazily by a Fisher-Yates shuffle,
+         * one step per opened site, so every draw opens a new site.
+         * The shuffle starts from the identity permutation, so that
+         * the order depends on the trial's random stream only and not
+         * on the trials the worker performed before.
+         */
+        private int runPermutationTrial() {
+            for (int p = 0; p < sites.length; p++) {
+                sites[p] = p;
+            }
+
+            for (int k = 0; k < sites.length; k++) {
+                int r = k + random.nextInt(sites.length - k);
+                int site = sites[r];
+                sites[r] = sites[k];
+                sites[k] = site;
+
+                percolation.open(site / n + 1, site % n + 1);
+                if (percolation.percolates()) {
+                    return k + 1;
+                }
+            }
+            throw new IllegalStateException(
+                    "Fully open system does not percolate");
+        }
+    }
+
     private void printMean() {
         StdOut.println("mean\t\t\t\t\t= " + mean());
     }
@@ -91,20 +594,60 @@ public class PercolationStats {
     }
 
     /**
-     * Client of the class.
+     * Client of the class. With the -width flag, experiments go on until
+     * the confidence interval gets narrower than the width instead of
+     * running a fixed number of them.
+     *
+     * % java PercolationStats n t|-width w [threads [seed [sampling
+     *                                                  [checkpoint]]]]
      */
     public static void main(String[] args) {
-        if (args.length != 2) {
-            throw new IllegalArgumentException("Provide two arguments");
+        boolean adaptive = args.length > 1 && "-width".equals(args[1]);
+        int first = adaptive ? 3 : 2; // Index of the optional arguments
+        if (args.length < first || args.length > first + 4) {
+            throw new IllegalArgumentException("Provide n, t or -width w"
+                    + " and optionally threads, seed, sampling and"
+                    + " checkpoint");
         }
 
         int n = Integer.parseInt(args[0]);
-        int t = Integer.parseInt(args[1]);
+        int threads = 1;
+        if (args.length > first) {
+            threads = Integer.parseInt(args[first]);
+        }
+        long seed = StdRandom.uniform(Integer.MAX_VALUE);
+        if (args.length > first + 1) {
+            seed = Long.parseLong(args[first + 1]);
+        }
+        Sampling sampling = Sampling.REJECTION;
+        if (args.length > first + 2) {
+            sampling = Sampling.valueOf(args[first + 2].toUpperCase());
+        }
+        File checkpointFile = null;
+        if (args.length > first + 3) {
+            checkpointFile = new File(args[first + 3]);
+        }
 
-        PercolationStats stats = new PercolationStats(n, t);
+        PercolationStats stats;
+        if (adaptive) {
+            if (checkpointFile != null) {
+                throw new IllegalArgumentException(
+                        "Checkpoints need a fixed number of experiments");
+            }
+            double width = Double.parseDouble(args[2]);
+            stats = untilWidth(n, width, seed, threads, sampling);
+            StdOut.println("trials\t\t\t\t\t= " + stats.trials());
+        } else {
+            int t = Integer.parseInt(args[1]);
+            stats = new PercolationStats(n, t, seed, threads, sampling,
+                    checkpointFile);
+        }
         stats.printMean();
         stats.printStdDev();
         stats.printConfidence95Interval();
+        if (PercolationMetrics.ENABLED) {
+            StdOut.println("metrics\t\t\t\t\t= " + stats.metrics());
+        }
     }
 
 }
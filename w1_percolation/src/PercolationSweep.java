@@ -0,0 +1,273 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       8/19/2012
+ *  Last updated:  8/19/2012
+ *
+ *  Dependencies: PercolationStats.java PercolationMetrics.java
+ *
+ *  Performer of series of experiments on many grid sizes sharing
+ *  one pool of threads, for finite-size scaling
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class PercolationSweep {
+
+    private static final long TASK_SITES = 1L << 20; // Sites of the grids
+                                                     // of a task's trials
+
+    private PercolationStats[] stats; // Results of the series in the order
+                                      // they were given
+
+    private ThreadLocal<Slot> slots = new ThreadLocal<Slot>() {
+        @Override
+        protected Slot initialValue() {
+            return new Slot();
+        }
+    };
+
+    /**
+     * Performs trials[k] experiments on a sizes[k] x sizes[k] percolation
+     * system for every k. Trials of all series are split into tasks of
+     * similar work and run by one work-stealing pool, largest grids
+     * first, so that small grids fill the cores left idle while the last
+     * large trials finish. Trials depend on the seed and their number
+     * only, so every series gives the same results as PercolationStats
+     * with the same n, t, seed and sampling.
+     *
+     * @param sizes the sizes of the grids
+     * @param trials the numbers of experiments
+     * @param seed the seed of the experiments of every series
+     * @param threads the number of worker threads
+     * @param sampling the way of choosing sites to open
+     */
+    public PercolationSweep(int[] sizes, int[] trials, long seed,
+            int threads, PercolationStats.Sampling sampling) {
+        if (sizes.length != trials.length) {
+            throw new IllegalArgumentException(
+                    "Provide the number of experiments of every size");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException(
+                    "Only positive number of threads allowed");
+        }
+        if (sampling == null) {
+            throw new NullPointerException("Sampling is null");
+        }
+
+        final Series[] series = new Series[sizes.length];
+        for (int k = 0; k < series.length; k++) {
+            if (sizes[k] <= 0) {
+                throw new IllegalArgumentException("Only positive N allowed");
+            }
+            if (trials[k] <= 0) {
+                throw new IllegalArgumentException("Only positive T allowed");
+            }
+            series[k] = new Series(sizes[k], trials[k], seed, sampling);
+        }
+
+        Integer[] order = new Integer[series.length];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return series[b].n - series[a].n;
+            }
+        });
+
+        // The pool starts external submissions in the order they came
+        List<Task> tasks = new ArrayList<Task>();
+        for (int k : order) {
+            long sites = (long) series[k].n * series[k].n;
+            int chunk = (int) Math.max(1, Math.min(trials[k],
+                    TASK_SITES / sites));
+            for (int first = 0; first < trials[k]; first += chunk) {
+                tasks.add(new Task(series[k], first,
+                        Math.min(trials[k], first + chunk)));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Task task : tasks) {
+                pool.execute(task);
+            }
+            for (Task task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sweep interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sweep failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        this.stats = new PercolationStats[series.length];
+        for (int k = 0; k < series.length; k++) {
+            stats[k] = new PercolationStats(series[k].n,
+                    series[k].openedSites, series[k].metrics());
+        }
+    }
+
+    /**
+     * Returns the number of series.
+     */
+    public int series() {
+        return stats.length;
+    }
+
+    /**
+     * Returns the results of the series.
+     *
+     * @param k index of the series in the order they were given
+     */
+    public PercolationStats stats(int k) {
+        return stats[k];
+    }
+
+    /**
+     * Experiments on one grid size.
+     */
+    private static class Series {
+        private int n; // The size of the grid
+        private long seed; // The seed of the experiments
+        private PercolationStats.Sampling sampling; // The way of choosing
+                                                    // sites to open
+        private int[] openedSites; // Open sites at which each trial
+                                   // percolated
+        private List<PercolationMetrics> workerMetrics =
+                new ArrayList<PercolationMetrics>(); // Counters of
+                                                     // the series' workers
+
+        public Series(int n, int t, long seed,
+                PercolationStats.Sampling sampling) {
+            this.n = n;
+            this.seed = seed;
+            this.sampling = sampling;
+            this.openedSites = new int[t];
+        }
+
+        public PercolationStats.Worker createWorker() {
+            PercolationStats.Worker worker =
+                    new PercolationStats.Worker(n, seed, sampling);
+            if (PercolationMetrics.ENABLED) {
+                synchronized (workerMetrics) {
+                    workerMetrics.add(worker.metrics());
+                }
+            }
+            return worker;
+        }
+
+        public PercolationMetrics metrics() {
+            if (!PercolationMetrics.ENABLED) {
+                return null;
+            }
+            PercolationMetrics metrics = new PercolationMetrics();
+            for (PercolationMetrics other : workerMetrics) {
+                metrics.add(other);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * The worker a pool thread keeps for the series of its last task.
+     * Tasks of a series are queued together, so a thread usually takes
+     * a few of them in a row and allocates one grid for them.
+     */
+    private static class Slot {
+        private Series series;
+        private PercolationStats.Worker worker;
+    }
+
+    /**
+     * A range of trials of a series.
+     */
+    private class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Series series;
+        private int firstTrial; // The first trial of the range
+        private int endTrial; // The trial after the last one of the range
+
+        public Task(Series series, int firstTrial, int endTrial) {
+            this.series = series;
+            this.firstTrial = firstTrial;
+            this.endTrial = endTrial;
+        }
+
+        @Override
+        protected void compute() {
+            Slot slot = slots.get();
+            if (slot.series != series) {
+                slot.worker = null; // Let the previous grid be collected
+                slot.worker = series.createWorker();
+                slot.series = series;
+            }
+
+            for (int trial = firstTrial; trial < endTrial; trial++) {
+                series.openedSites[trial] = slot.worker.runTrial(trial);
+            }
+        }
+    }
+
+    /**
+     * Client of the class. Prints the mean, the standard deviation and
+     * the 95% confidence interval of every series as tab-separated lines.
+     *
+     * % java PercolationSweep threads seed sampling n:t [n:t ...]
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            throw new IllegalArgumentException("Provide threads, seed,"
+                    + " sampling and pairs of n and t");
+        }
+
+        int threads = Integer.parseInt(args[0]);
+        long seed = Long.parseLong(args[1]);
+        PercolationStats.Sampling sampling =
+                PercolationStats.Sampling.valueOf(args[2].toUpperCase());
+
+        int[] sizes = new int[args.length - 3];
+        int[] trials = new int[args.length - 3];
+        for (int k = 0; k < sizes.length; k++) {
+            String[] pair = args[k + 3].split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Malformed pair "
+                        + args[k + 3]);
+            }
+            sizes[k] = Integer.parseInt(pair[0]);
+            trials[k] = Integer.parseInt(pair[1]);
+        }
+
+        PercolationSweep sweep = new PercolationSweep(sizes, trials, seed,
+                threads, sampling);
+
+        StdOut.println("n\ttrials\tmean\tstddev\tlo\thi");
+        for (int k = 0; k < sweep.series(); k++) {
+            PercolationStats stats = sweep.stats(k);
+            double[] interval = stats.confidence95Interval();
+            StdOut.println(sizes[k] + "\t" + stats.trials() + "\t"
+                    + stats.mean() + "\t" + stats.stddev() + "\t"
+                    + interval[0] + "\t" + interval[1]);
+        }
+        if (PercolationMetrics.ENABLED) {
+            for (int k = 0; k < sweep.series(); k++) {
+                StdOut.println("metrics n=" + sizes[k] + "\t"
+                        + sweep.stats(k).metrics());
+            }
+        }
+    }
+
+}
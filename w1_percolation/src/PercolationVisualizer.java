@@ -12,10 +12,13 @@
  *
  *  After each site is opened, it draws full sites in light blue,
  *  open sites (that aren't full) in white, and blocked sites in black,
- *  with with site (1, 1) in the upper left-hand corner.
+ *  with with site (1, 1) in the upper left-hand corner. Only the opened
+ *  site and the sites that became full with it are redrawn, so a step
+ *  costs time proportional to the change rather than to N^2.
  *
  ****************************************************************************/
 
+import java.awt.Color;
 import java.awt.Font;
 
 public class PercolationVisualizer {
@@ -43,28 +46,50 @@ public class PercolationVisualizer {
             }
         }
 
-        // write status text
+        drawStatus(perc, N, opened);
+    }
+
+    // redraw site (row, col) in the given color
+    public static void drawSite(int row, int col, int N, Color color) {
+        StdDraw.setPenColor(color);
+        StdDraw.filledSquare(col - 0.5, N - row + 0.5, 0.45);
+    }
+
+    // write status text over the previous one
+    public static void drawStatus(Percolation perc, int N, int opened) {
+        StdDraw.setPenColor(StdDraw.WHITE);
+        StdDraw.filledRectangle(N/2.0, -N*.025, N/2.0, N*.025);
+
         StdDraw.setFont(new Font("SansSerif", Font.PLAIN, 12));
         StdDraw.setPenColor(StdDraw.BLACK);
         StdDraw.text(.25*N, -N*.025, opened + " open sites");
         if (perc.percolates()) StdDraw.text(.75*N, -N*.025, "percolates");
         else                   StdDraw.text(.75*N, -N*.025, "does not percolate");
-
     }
 
     public static void main(String[] args) {
         In in = new In(args[0]);      // input file
-        int N = in.readInt();         // N-by-N percolation system
+        final int N = in.readInt();   // N-by-N percolation system
 
-        // repeatedly read in sites to open and draw resulting system
+        // repeatedly read in sites to open and draw changed sites only
         Percolation perc = new Percolation(N);
         draw(perc, N);
+        perc.setFullSiteListener(new Percolation.FullSiteListener() {
+            public void siteFilled(int i, int j) {
+                drawSite(i, j, N, StdDraw.BOOK_LIGHT_BLUE);
+            }
+        });
+        int opened = 0;
         while (!in.isEmpty()) {
             StdDraw.show(0);          // turn on animation mode
             int i = in.readInt();
             int j = in.readInt();
-            perc.open(i, j);
-            draw(perc, N);
+            if (!perc.isOpen(i, j)) {
+                drawSite(i, j, N, StdDraw.WHITE);
+                perc.open(i, j);      // repaints sites that became full
+                opened++;
+                drawStatus(perc, N, opened);
+            }
             StdDraw.show(100);        // pause for 100 miliseconds
         }
     }
@@ -0,0 +1,319 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       8/19/2012
+ *  Last updated:  8/19/2012
+ *
+ *  Dependencies: None
+ *
+ *  Model of a percolation system whose opened sites can be rolled
+ *  back to a checkpoint
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RollbackPercolation {
+
+    private static final byte OPENED = 1; // The site is opened
+    private static final byte TOP = 2; // The tree rooted at the site is
+                                       // connected to the top row
+    private static final byte BOTTOM = 4; // The tree rooted at the site is
+                                          // connected to the bottom row
+
+    private static final int OPEN_RECORD = -1; // Marks an open in the log
+
+    private int n; // A percolation system is modeled using an n x n grid
+    private int size; // Total number of sites in the system
+    private int openedSites; // Number of opened sites
+    private boolean percolated; // Indicates if the system percolates
+
+    private byte[] siteState; // Indicates if a site is opened and, for
+                              // roots, if its tree is connected to the
+                              // top and the bottom rows
+    private int[] siteParent; // Parent links of a quick-union algorithm
+                              // with union by rank and no path
+                              // compression, so that links only change
+                              // in unions
+    private byte[] siteRank; // Upper bound of the height of a tree
+                             // rooted at the site
+
+    private int[] undoLog; // Records of changes, three ints each
+    private int logSize; // Number of ints used in the log
+
+    private int[] checkpointIds; // Live checkpoints, oldest first
+    private int[] checkpointMarks; // Log sizes at the live checkpoints
+    private int checkpoints; // Number of live checkpoints
+    private int nextCheckpointId; // Id of the next checkpoint, never
+                                  // reused so that dropped ones stay
+                                  // unknown
+
+    /**
+     * Creates an empty percolation system with all sites blocked.
+     *
+     * @param n the size of the grid
+     */
+    public RollbackPercolation(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Only positive N allowed");
+        }
+
+        this.n = n;
+        this.size = n * n;
+
+        this.siteState = new byte[this.size];
+        this.siteParent = new int[this.size];
+        this.siteRank = new byte[this.size];
+        this.undoLog = new int[3 * 16];
+        this.checkpointIds = new int[4];
+        this.checkpointMarks = new int[4];
+
+        reset();
+    }
+
+    /**
+     * Blocks all sites again and drops all checkpoints.
+     */
+    public void reset() {
+        for (int p = 0; p < size; p++) {
+            siteState[p] = 0;
+            siteParent[p] = p;
+            siteRank[p] = 0;
+        }
+        for (int j = 1; j <= n; j++) {
+            siteState[flattenIndexes(1, j)] |= TOP;
+            siteState[flattenIndexes(n, j)] |= BOTTOM;
+        }
+
+        openedSites = 0;
+        percolated = false;
+        logSize = 0;
+        checkpoints = 0;
+    }
+
+    /**
+     * Returns a checkpoint of the current state to roll back to later.
+     * Checkpoints nest: rolling back to one drops the checkpoints taken
+     * after it, but keeps the one rolled back to.
+     */
+    public int checkpoint() {
+        if (checkpoints == checkpointIds.length) {
+            int[] ids = new int[2 * checkpoints];
+            int[] marks = new int[2 * checkpoints];
+            System.arraycopy(checkpointIds, 0, ids, 0, checkpoints);
+            System.arraycopy(checkpointMarks, 0, marks, 0, checkpoints);
+            checkpointIds = ids;
+            checkpointMarks = marks;
+        }
+        checkpointIds[checkpoints] = nextCheckpointId;
+        checkpointMarks[checkpoints] = logSize;
+        checkpoints++;
+        return nextCheckpointId++;
+    }
+
+    /**
+     * Blocks the sites opened since the checkpoint. Every open logged
+     * at most five records, so rolling back k opens takes O(k) time
+     * on top of the O(log n) finds those opens made.
+     *
+     * @param checkpoint the checkpoint returned earlier
+     * @throws IllegalArgumentException if the checkpoint was dropped or
+     *         never returned by checkpoint()
+     */
+    public void rollback(int checkpoint) {
+        // Ids of live checkpoints increase from the oldest one
+        int k = Arrays.binarySearch(checkpointIds, 0, checkpoints, checkpoint);
+        if (k < 0) {
+            throw new IllegalArgumentException("Unknown checkpoint");
+        }
+        checkpoints = k + 1;
+
+        int mark = checkpointMarks[k];
+        while (logSize > mark) {
+            logSize -= 3;
+            int p = undoLog[logSize];
+            int root = undoLog[logSize + 1];
+            int previous = undoLog[logSize + 2];
+
+            if (root == OPEN_RECORD) {
+                siteState[p] &= ~OPENED;
+                openedSites--;
+                percolated = previous != 0;
+            } else {
+                siteParent[p] = p;
+                siteState[root] = (byte) previous;
+                siteRank[root] = (byte) (previous >>> 8);
+            }
+        }
+    }
+
+    /**
+     * Opens the site if it is not already.
+     *
+     * @param i row index (1 <= i <= n)
+     * @param j column index (1 <= j <= n)
+     */
+    public void open(int i, int j) {
+        int p = flattenIndexes(i, j);
+
+        if ((siteState[p] & OPENED) == 0) {
+            log(p, OPEN_RECORD, percolated ? 1 : 0);
+            siteState[p] |= OPENED;
+            openedSites++;
+            if ((siteState[p] & (TOP | BOTTOM)) == (TOP | BOTTOM)) {
+                percolated = true; // The only site of a 1 x 1 system
+            }
+
+            if (i > 1) { // Connect to the top site
+                int q = flattenIndexes(i - 1, j);
+                if ((siteState[q] & OPENED) != 0) union(p, q);
+            }
+            if (i < n) { // Connect to the bottom site
+                int q = flattenIndexes(i + 1, j);
+                if ((siteState[q] & OPENED) != 0) union(p, q);
+            }
+            if (j > 1) { // Connect to the left site
+                int q = flattenIndexes(i, j - 1);
+                if ((siteState[q] & OPENED) != 0) union(p, q);
+            }
+            if (j < n) { // Connect to the right site
+                int q = flattenIndexes(i, j + 1);
+                if ((siteState[q] & OPENED) != 0) union(p, q);
+            }
+        }
+    }
+
+    /**
+     * Checks if the site is open.
+     *
+     * @param i row index (1 <= i <= n)
+     * @param j column index (1 <= j <= n)
+     */
+    public boolean isOpen(int i, int j) {
+        int p = flattenIndexes(i, j);
+        return (siteState[p] & OPENED) != 0;
+    }
+
+    /**
+     * Checks if the site is full (connected to the top row).
+     *
+     * @param i row index (1 <= i <= n)
+     * @param j column index (1 <= j <= n)
+     */
+    public boolean isFull(int i, int j) {
+        int p = flattenIndexes(i, j);
+        return (siteState[p] & OPENED) != 0
+                && (siteState[find(p)] & TOP) != 0;
+    }
+
+    /**
+     * Checks if the system percolates.
+     */
+    public boolean percolates() {
+        return percolated;
+    }
+
+    /**
+     * Returns the number of opened sites.
+     */
+    public int numberOfOpenSites() {
+        return openedSites;
+    }
+
+    private int flattenIndexes(int i, int j) {
+        if (i < 1 || i > n) {
+            throw new IndexOutOfBoundsException("Row index i out of bounds");
+        }
+        if (j < 1 || j > n) {
+            throw new IndexOutOfBoundsException("Column index j out of bounds");
+        }
+        return (i - 1) * n + j - 1;
+    }
+
+    private int find(int p) {
+        while (p != siteParent[p]) {
+            p = siteParent[p];
+        }
+        return p;
+    }
+
+    /**
+     * Unites trees of the sites by rank, logging the link and the state
+     * of the new root before the union.
+     */
+    private void union(int p, int q) {
+        int pRoot = find(p);
+        int qRoot = find(q);
+        if (pRoot == qRoot) return;
+
+        if (siteRank[pRoot] > siteRank[qRoot]) {
+            int swap = pRoot;
+            pRoot = qRoot;
+            qRoot = swap;
+        }
+
+        // Make the root of the lower tree point to the other one
+        log(pRoot, qRoot, (siteState[qRoot] & 0xFF) | siteRank[qRoot] << 8);
+        siteParent[pRoot] = qRoot;
+        siteState[qRoot] |= siteState[pRoot] & (TOP | BOTTOM);
+        if (siteRank[pRoot] == siteRank[qRoot]) siteRank[qRoot]++;
+
+        if ((siteState[qRoot] & (TOP | BOTTOM)) == (TOP | BOTTOM)) {
+            percolated = true;
+        }
+    }
+
+    private void log(int p, int root, int previous) {
+        if (logSize == undoLog.length) {
+            int[] copy = new int[2 * undoLog.length];
+            System.arraycopy(undoLog, 0, copy, 0, logSize);
+            undoLog = copy;
+        }
+        undoLog[logSize++] = p;
+        undoLog[logSize++] = root;
+        undoLog[logSize++] = previous;
+    }
+
+    /**
+     * Client of the class. Opens random sites up to the given fraction,
+     * then repeatedly opens a batch of further random sites, checks if
+     * the system percolates and rolls the batch back. Prints the fraction
+     * of batches that made the system percolate.
+     *
+     * % java RollbackPercolation n p batch scenarios [seed]
+     */
+    public static void main(String[] args) {
+        if (args.length < 4 || args.length > 5) {
+            throw new IllegalArgumentException("Provide n, p, batch,"
+                    + " scenarios and optionally seed");
+        }
+
+        int n = Integer.parseInt(args[0]);
+        double p = Double.parseDouble(args[1]);
+        int batch = Integer.parseInt(args[2]);
+        int scenarios = Integer.parseInt(args[3]);
+        Random random = new Random();
+        if (args.length > 4) {
+            random.setSeed(Long.parseLong(args[4]));
+        }
+
+        RollbackPercolation percolation = new RollbackPercolation(n);
+        while (percolation.numberOfOpenSites() < p * n * n) {
+            percolation.open(random.nextInt(n) + 1, random.nextInt(n) + 1);
+        }
+
+        int checkpoint = percolation.checkpoint();
+        int percolating = 0;
+        for (int k = 0; k < scenarios; k++) {
+            for (int s = 0; s < batch; s++) {
+                percolation.open(random.nextInt(n) + 1,
+                        random.nextInt(n) + 1);
+            }
+            if (percolation.percolates()) percolating++;
+            percolation.rollback(checkpoint);
+        }
+        StdOut.println("percolating\t= "
+                + ((double) percolating) / scenarios);
+    }
+
+}
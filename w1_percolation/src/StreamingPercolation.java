@@ -0,0 +1,248 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       8/19/2012
+ *  Last updated:  8/19/2012
+ *
+ *  Dependencies: In.java
+ *
+ *  Percolation checker of a system streamed one row at a time
+ *  with O(n) memory
+ *
+ *----------------------------------------------------------------*/
+
+public class StreamingPercolation {
+
+    private int n; // A percolation system is modeled using an n x n grid
+    private int rows; // The number of rows added
+    private int labels; // The number of labels in the previous row
+    private boolean connectedToTop; // Indicates if the last added row has
+                                    // a cluster reaching the top row
+
+    private int[] previousLabels; // Cluster labels of the previous row,
+                                  // zero for blocked sites
+    private int[] currentLabels; // Cluster labels of the current row
+    private int[] labelParent; // Union-find links between labels
+    private boolean[] labelConnectedToTop; // Indicates if a root label's
+                                           // cluster reaches the top row
+    private int[] labelRenumbering; // New labels of root labels
+    private boolean[] renumberedConnectedToTop; // Top flags of
+                                                // the new labels
+
+    /**
+     * Creates a checker of a n x n percolation system with no rows added.
+     *
+     * @param n the size of the grid
+     */
+    public StreamingPercolation(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Only positive N allowed");
+        }
+
+        this.n = n;
+
+        // A row has at most n labels carried over from the previous row
+        // and at most n new ones
+        this.previousLabels = new int[n];
+        this.currentLabels = new int[n];
+        this.labelParent = new int[2 * n + 1];
+        this.labelConnectedToTop = new boolean[2 * n + 1];
+        this.labelRenumbering = new int[2 * n + 1];
+        this.renumberedConnectedToTop = new boolean[n + 1];
+
+        reset();
+    }
+
+    /**
+     * Drops all added rows, so that the checker can be reused for another
+     * system without allocating a new one.
+     */
+    public void reset() {
+        rows = 0;
+        labels = 0;
+        connectedToTop = true;
+        for (int j = 0; j < n; j++) {
+            previousLabels[j] = 0;
+        }
+    }
+
+    /**
+     * Adds the next row of the system from the top.
+     *
+     * @param row open sites of the row
+     * @throws IllegalStateException if all n rows are added
+     */
+    public void addRow(boolean[] row) {
+        addRow(row, 0);
+    }
+
+    /**
+     * Adds the next row of the system from the top. Clusters are labelled
+     * by Hoshen-Kopelman: a site joins the labels of its upper and left
+     * neighbours, and labels are renumbered after every row.
+     *
+     * @param sites open sites of the row starting at the offset
+     * @param offset index of the row's first site
+     * @throws IllegalStateException if all n rows are added
+     */
+    public void addRow(boolean[] sites, int offset) {
+        if (rows == n) {
+            throw new IllegalStateException("All rows are added");
+        }
+        rows++;
+        if (!connectedToTop) {
+            return; // Every path to the bottom crosses a blocked row
+        }
+
+        int nextLabel = labels + 1;
+        for (int j = 0; j < n; j++) {
+            if (!sites[offset + j]) {
+                currentLabels[j] = 0;
+                continue;
+            }
+
+            int up = previousLabels[j];
+            int left = j > 0 ? currentLabels[j - 1] : 0;
+            if (up == 0 && left == 0) {
+                currentLabels[j] = nextLabel;
+                labelParent[nextLabel] = nextLabel;
+                labelConnectedToTop[nextLabel] = rows == 1;
+                nextLabel++;
+            } else if (left == 0) {
+                currentLabels[j] = up;
+            } else if (up == 0) {
+                currentLabels[j] = left;
+            } else {
+                currentLabels[j] = union(up, left);
+            }
+        }
+
+        labels = renumberLabels(nextLabel);
+        connectedToTop = false;
+        for (int label = 1; label <= labels; label++) {
+            connectedToTop |= labelConnectedToTop[label];
+        }
+
+        int[] swap = previousLabels;
+        previousLabels = currentLabels;
+        currentLabels = swap;
+    }
+
+    /**
+     * Checks if the system may still percolate, that is every added row
+     * has a cluster reaching the top row.
+     */
+    public boolean mayPercolate() {
+        return connectedToTop;
+    }
+
+    /**
+     * Checks if the system percolates.
+     *
+     * @throws IllegalStateException if not all n rows are added
+     */
+    public boolean percolates() {
+        if (rows < n) {
+            throw new IllegalStateException("Not all rows are added");
+        }
+        return connectedToTop;
+    }
+
+    /**
+     * Replaces labels of the current row by their roots numbered from 1
+     * in the order of appearance, so that labels never outgrow 2n.
+     * Returns the number of labels.
+     */
+    private int renumberLabels(int nextLabel) {
+        int renumbered = 0;
+        for (int j = 0; j < n; j++) {
+            if (currentLabels[j] == 0) continue;
+
+            int root = find(currentLabels[j]);
+            if (labelRenumbering[root] == 0) {
+                labelRenumbering[root] = ++renumbered;
+                renumberedConnectedToTop[renumbered] =
+                        labelConnectedToTop[root];
+            }
+            currentLabels[j] = labelRenumbering[root];
+        }
+
+        for (int label = 1; label < nextLabel; label++) {
+            labelRenumbering[label] = 0;
+        }
+        for (int label = 1; label <= renumbered; label++) {
+            labelParent[label] = label;
+            labelConnectedToTop[label] = renumberedConnectedToTop[label];
+        }
+        return renumbered;
+    }
+
+    private int find(int label) {
+        int root = label;
+        while (labelParent[root] != root) {
+            root = labelParent[root];
+        }
+        while (labelParent[label] != root) { // Path compression
+            int next = labelParent[label];
+            labelParent[label] = root;
+            label = next;
+        }
+        return root;
+    }
+
+    private int union(int p, int q) {
+        int pRoot = find(p);
+        int qRoot = find(q);
+        if (pRoot != qRoot) {
+            labelParent[qRoot] = pRoot;
+            labelConnectedToTop[pRoot] = labelConnectedToTop[pRoot]
+                    || labelConnectedToTop[qRoot];
+        }
+        return pRoot;
+    }
+
+    /**
+     * Client of the class. Reads the grid size n followed by n rows of
+     * n sites, '1' for an open site and '0' for a blocked one (blanks
+     * between sites are ignored), and prints whether the system
+     * percolates. Only one row is held in memory at a time.
+     *
+     * % java StreamingPercolation grid.txt
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Provide a grid file");
+        }
+
+        In in = new In(args[0]);
+        int n = Integer.parseInt(in.readLine().trim());
+
+        StreamingPercolation percolation = new StreamingPercolation(n);
+        boolean[] row = new boolean[n];
+        for (int i = 1; i <= n && percolation.mayPercolate(); i++) {
+            String line = in.readLine();
+            if (line == null) {
+                throw new IllegalArgumentException("Row " + i + " is missing");
+            }
+
+            int j = 0;
+            for (int k = 0; k < line.length(); k++) {
+                char site = line.charAt(k);
+                if (Character.isWhitespace(site)) continue;
+                if (j == n || (site != '0' && site != '1')) {
+                    throw new IllegalArgumentException("Row " + i
+                            + " is malformed");
+                }
+                row[j++] = site == '1';
+            }
+            if (j < n) {
+                throw new IllegalArgumentException("Row " + i + " is short");
+            }
+
+            percolation.addRow(row);
+        }
+
+        if (percolation.mayPercolate()) StdOut.println("percolates");
+        else                            StdOut.println("does not percolate");
+    }
+
+}
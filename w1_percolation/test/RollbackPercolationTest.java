@@ -0,0 +1,111 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RollbackPercolationTest {
+
+    private RollbackPercolation percolation;
+
+    @Before
+    public void setUp() throws Exception {
+        percolation = new RollbackPercolation(5);
+    }
+
+    @Test
+    public void rollbackBlocksSitesOpenedSince() {
+        percolation.open(1, 1);
+        int checkpoint = percolation.checkpoint();
+        for (int i = 2; i <= 5; i++) {
+            percolation.open(i, 1);
+        }
+        assertThat(percolation.percolates(), is(true));
+
+        percolation.rollback(checkpoint);
+        assertThat(percolation.percolates(), is(false));
+        assertThat(percolation.numberOfOpenSites(), is(1));
+        assertThat(percolation.isOpen(1, 1), is(true));
+        assertThat(percolation.isOpen(2, 1), is(false));
+        assertThat(percolation.isFull(1, 1), is(true));
+    }
+
+    @Test
+    public void rollbackKeepsTheCheckpoint() {
+        int checkpoint = percolation.checkpoint();
+        percolation.open(1, 1);
+        percolation.rollback(checkpoint);
+        percolation.open(2, 2);
+        percolation.rollback(checkpoint);
+        assertThat(percolation.numberOfOpenSites(), is(0));
+    }
+
+    /**
+     * Opens random sites, then more of them after a checkpoint, rolls
+     * them back and compares every site with a system that opened
+     * the first sites only.
+     */
+    @Test
+    public void rollbackMatchesSystemWithoutLaterOpens() {
+        Random random = new Random(17);
+        int n = 20;
+        for (int round = 0; round < 50; round++) {
+            RollbackPercolation rollback = new RollbackPercolation(n);
+            Percolation expected = new Percolation(n);
+            for (int k = 0; k < 150; k++) {
+                int i = random.nextInt(n) + 1;
+                int j = random.nextInt(n) + 1;
+                rollback.open(i, j);
+                expected.open(i, j);
+            }
+
+            int checkpoint = rollback.checkpoint();
+            for (int k = 0; k < 150; k++) {
+                rollback.open(random.nextInt(n) + 1, random.nextInt(n) + 1);
+            }
+            rollback.rollback(checkpoint);
+
+            assertThat(rollback.percolates(), is(expected.percolates()));
+            for (int i = 1; i <= n; i++) {
+                for (int j = 1; j <= n; j++) {
+                    assertThat(rollback.isOpen(i, j),
+                            is(expected.isOpen(i, j)));
+                    assertThat(rollback.isFull(i, j),
+                            is(expected.isFull(i, j)));
+                }
+            }
+        }
+    }
+
+    /**
+     * A checkpoint dropped by rolling back past it must be rejected,
+     * even once the log has grown past its position again.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rollbackToDroppedCheckpoint() {
+        int first = percolation.checkpoint();
+        percolation.open(1, 1);
+        int dropped = percolation.checkpoint();
+        percolation.open(2, 2);
+        percolation.rollback(first);
+
+        percolation.open(3, 3);
+        percolation.open(4, 4);
+        percolation.rollback(dropped);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rollbackAfterReset() {
+        int checkpoint = percolation.checkpoint();
+        percolation.reset();
+        percolation.rollback(checkpoint);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rollbackToUnknownCheckpoint() {
+        percolation.rollback(3);
+    }
+
+}
@@ -0,0 +1,668 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       9/1/2012
+ *  Last updated:  9/1/2012
+ *
+ *  Micro-benchmarks of the queues. Every benchmark is warmed up and
+ *  then measured in timed iterations, reporting throughput and bytes
+ *  allocated per operation as tab-separated lines.
+ *
+ *  % java -cp bin:lib/* QueueBenchmark [filter]
+ *
+ *----------------------------------------------------------------*/
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class QueueBenchmark {
+
+    private static final int[] SIZES = {1024, 1 << 20};
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1000000000L;
+
+    private static final Integer[] ITEMS = new Integer[1 << 20]; // Boxed
+                                                                 // once, so
+                                                                 // that only
+                                                                 // queues
+                                                                 // allocate
+
+    private static volatile long sink; // Consumes results, so that the JIT
+                                       // cannot eliminate benchmarked code
+
+    static {
+        for (int i = 0; i < ITEMS.length; i++) {
+            ITEMS[i] = i;
+        }
+    }
+
+    /**
+     * A benchmarked operation.
+     */
+    private abstract static class Benchmark {
+        private String name; // Name with parameters
+
+        public Benchmark(String name) {
+            this.name = name;
+        }
+
+        /** Prepares the state before measurement. */
+        public void setUp() { }
+
+        /** Releases the state after measurement. */
+        public void tearDown() { }
+
+        /** Runs the operation and returns the number of ops performed. */
+        public abstract long run();
+    }
+
+    /**
+     * Fills a new deque from the back and empties it from the front.
+     * Bytes per op show the memory a deque of the size takes.
+     */
+    private static Benchmark dequeFifo(final int size) {
+        return new Benchmark("deque.fifo\tsize=" + size) {
+            @Override
+            public long run() {
+                Deque<Integer> deque = new Deque<Integer>();
+                for (int i = 0; i < size; i++) {
+                    deque.addLast(ITEMS[i]);
+                }
+                long sum = 0;
+                for (int i = 0; i < size; i++) {
+                    sum += deque.removeFirst();
+                }
+                sink += sum;
+                return 2L * size;
+            }
+        };
+    }
+
+    /**
+     * Same as dequeFifo with an IntDeque of the unboxed values.
+     */
+    private static Benchmark intDequeFifo(final int size) {
+        return new Benchmark("intDeque.fifo\tsize=" + size) {
+            @Override
+            public long run() {
+                IntDeque deque = new IntDeque();
+                for (int i = 0; i < size; i++) {
+                    deque.addLast(i);
+                }
+                long sum = 0;
+                for (int i = 0; i < size; i++) {
+                    sum += deque.removeFirst();
+                }
+                sink += sum;
+                return 2L * size;
+            }
+        };
+    }
+
+    /**
+     * Fills a new deque from the front and empties it from the front.
+     */
+    private static Benchmark dequeLifo(final int size) {
+        return new Benchmark("deque.lifo\tsize=" + size) {
+            @Override
+            public long run() {
+                Deque<Integer> deque = new Deque<Integer>();
+                for (int i = 0; i < size; i++) {
+                    deque.addFirst(ITEMS[i]);
+                }
+                long sum = 0;
+                for (int i = 0; i < size; i++) {
+                    sum += deque.removeFirst();
+                }
+                sink += sum;
+                return 2L * size;
+            }
+        };
+    }
+
+    /**
+     * Adds to the back and removes from the front of a deque holding
+     * the given number of items.
+     */
+    private static Benchmark dequeSteady(final int size) {
+        return new Benchmark("deque.steady\tsize=" + size) {
+            private Deque<Integer> deque;
+
+            @Override
+            public void setUp() {
+                deque = new Deque<Integer>();
+                for (int i = 0; i < size; i++) {
+                    deque.addLast(ITEMS[i]);
+                }
+            }
+
+            @Override
+            public long run() {
+                long sum = 0;
+                for (int i = 0; i < 1024; i++) {
+                    deque.addLast(ITEMS[i]);
+                    sum += deque.removeFirst();
+                }
+                sink += sum;
+                return 2048;
+            }
+        };
+    }
+
+    /**
+     * Iterates over a deque holding the given number of items.
+     */
+    private static Benchmark dequeIterate(final int size) {
+        return new Benchmark("deque.iterate\tsize=" + size) {
+            private Deque<Integer> deque;
+
+            @Override
+            public void setUp() {
+                deque = new Deque<Integer>();
+                for (int i = 0; i < size; i++) {
+                    deque.addLast(ITEMS[i]);
+                }
+            }
+
+            @Override
+            public long run() {
+                long sum = 0;
+                for (Integer item : deque) {
+                    sum += item;
+                }
+                sink += sum;
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Moves 1024 items into a randomized queue and back out, one at
+     * a time or with enqueueAll and dequeue(k).
+     */
+    private static Benchmark randomizedBatch(final boolean batch) {
+        String name = batch ? "randomized.batch" : "randomized.single";
+        return new Benchmark(name + "\titems=1024") {
+            private Integer[] items = Arrays.copyOf(ITEMS, 1024);
+            private RandomizedQueue<Integer> queue =
+                    new RandomizedQueue<Integer>();
+
+            @Override
+            public long run() {
+                long sum = 0;
+                if (batch) {
+                    queue.enqueueAll(items);
+                    for (Integer item : queue.dequeue(items.length)) {
+                        sum += item;
+                    }
+                } else {
+                    for (Integer item : items) {
+                        queue.enqueue(item);
+                    }
+                    for (int i = 0; i < items.length; i++) {
+                        sum += queue.dequeue();
+                    }
+                }
+                sink += sum;
+                return 2L * items.length;
+            }
+        };
+    }
+
+    /**
+     * Reads the given number of items from a new iterator over
+     * a randomized queue of 1M items.
+     */
+    private static Benchmark randomizedIterate(final int items) {
+        return new Benchmark("randomized.iterate\titems=" + items) {
+            private RandomizedQueue<Integer> queue;
+
+            @Override
+            public void setUp() {
+                queue = new RandomizedQueue<Integer>();
+                for (Integer item : ITEMS) {
+                    queue.enqueue(item);
+                }
+            }
+
+            @Override
+            public long run() {
+                Iterator<Integer> iterator = queue.iterator();
+                long sum = 0;
+                for (int i = 0; i < items; i++) {
+                    sum += iterator.next();
+                }
+                sink += sum;
+                return items;
+            }
+        };
+    }
+
+    /**
+     * Pushes items to a work-stealing deque and pops them back on
+     * the owner thread, with no thieves.
+     */
+    private static Benchmark stealingOwner(final int size) {
+        return new Benchmark("stealing.owner\tsize=" + size) {
+            private WorkStealingDeque<Integer> deque =
+                    new WorkStealingDeque<Integer>();
+
+            @Override
+            public long run() {
+                for (int i = 0; i < size; i++) {
+                    deque.push(ITEMS[i]);
+                }
+                long sum = 0;
+                for (int i = 0; i < size; i++) {
+                    sum += deque.pop();
+                }
+                sink += sum;
+                return 2L * size;
+            }
+        };
+    }
+
+    /**
+     * Same as stealingOwner with a deque shared behind a lock.
+     */
+    private static Benchmark stealingLocked(final int size) {
+        return new Benchmark("stealing.locked\tsize=" + size) {
+            private Deque<Integer> deque = new Deque<Integer>();
+
+            @Override
+            public long run() {
+                for (int i = 0; i < size; i++) {
+                    synchronized (deque) {
+                        deque.addLast(ITEMS[i]);
+                    }
+                }
+                long sum = 0;
+                for (int i = 0; i < size; i++) {
+                    synchronized (deque) {
+                        sum += deque.removeLast();
+                    }
+                }
+                sink += sum;
+                return 2L * size;
+            }
+        };
+    }
+
+    /**
+     * Pushes items on the owner thread while the other threads steal
+     * them, and pops what is left. One op is one item taken.
+     */
+    private static Benchmark stealingThieves(final int threads) {
+        return new Benchmark("stealing.thieves\tthreads=" + threads) {
+            private WorkStealingDeque<Integer> deque =
+                    new WorkStealingDeque<Integer>();
+            private volatile boolean running;
+            private List<Thread> thieves = new ArrayList<Thread>();
+
+            @Override
+            public void setUp() {
+                running = true;
+                for (int k = 1; k < threads; k++) {
+                    Thread thief = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            long sum = 0;
+                            while (running) {
+                                Integer item = deque.steal();
+                                if (item != null) sum += item;
+                            }
+                            sink += sum;
+                        }
+                    });
+                    thief.setDaemon(true);
+                    thieves.add(thief);
+                    thief.start();
+                }
+            }
+
+            @Override
+            public long run() {
+                long sum = 0;
+                for (int i = 0; i < 1024; i++) {
+                    deque.push(ITEMS[i]);
+                }
+                Integer item;
+                while ((item = deque.pop()) != null) {
+                    sum += item;
+                }
+                sink += sum;
+                return 1024;
+            }
+
+            @Override
+            public void tearDown() {
+                running = false;
+                for (Thread thief : thieves) {
+                    try {
+                        thief.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Samples k = 10 of 1M tokens held in memory: with a Scanner into a
+     * randomized queue as the queue mode of Subset does, with a
+     * TokenReader into a randomized queue for comparison, or with a
+     * TokenReader into a reservoir as the reservoir mode does. One op is
+     * one token.
+     */
+    private static Benchmark subset(final String mode) {
+        return new Benchmark("subset." + mode + "	tokens=" + ITEMS.length) {
+            private byte[] input;
+
+            @Override
+            public void setUp() {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < ITEMS.length; i++) {
+                    text.append(i).append(i % 16 == 15 ? '\n' : ' ');
+                }
+                input = text.toString().getBytes();
+            }
+
+            @Override
+            public long run() {
+                int k = 10;
+                long sum = 0;
+                if ("scanner".equals(mode)) {
+                    Scanner scanner = new Scanner(
+                            new ByteArrayInputStream(input), "UTF-8");
+                    RandomizedQueue<String> queue =
+                            new RandomizedQueue<String>();
+                    while (scanner.hasNext()) {
+                        queue.enqueue(scanner.next());
+                    }
+                    for (int i = 0; i < k; i++) {
+                        sum += queue.dequeue().length();
+                    }
+                } else {
+                    try {
+                        sum = sampleTokens(k);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                sink += sum;
+                return ITEMS.length;
+            }
+
+            private long sampleTokens(int k) throws IOException {
+                TokenReader reader = new TokenReader(Channels.newChannel(
+                        new ByteArrayInputStream(input)));
+                long sum = 0;
+                if ("queue".equals(mode)) {
+                    RandomizedQueue<String> queue =
+                            new RandomizedQueue<String>();
+                    while (!reader.isEmpty()) {
+                        queue.enqueue(reader.readString());
+                    }
+                    for (int i = 0; i < k; i++) {
+                        sum += queue.dequeue().length();
+                    }
+                } else {
+                    Reservoir<String> reservoir = new Reservoir<String>(k);
+                    while (true) {
+                        long skippable = reservoir.skippable();
+                        long skipped = reader.skip(skippable);
+                        reservoir.skip(skipped);
+                        if (skipped < skippable || reader.isEmpty()) break;
+                        reservoir.offer(reader.readString());
+                    }
+                    for (String token : reservoir) {
+                        sum += token.length();
+                    }
+                }
+                return sum;
+            }
+        };
+    }
+
+    /**
+     * Enqueues and dequeues items of a randomized queue holding the given
+     * number of items on the given number of threads, either sharing one
+     * RandomizedQueue behind a lock or one ConcurrentRandomizedQueue.
+     * A few items leave most stripes empty.
+     */
+    private static Benchmark randomized(final int threads,
+            final boolean striped, final int items) {
+        String name = striped ? "randomized.striped" : "randomized.locked";
+        return new Benchmark(name + "\tthreads=" + threads
+                + " items=" + items) {
+            private ExecutorService executor;
+            private List<Callable<Long>> tasks;
+
+            @Override
+            public void setUp() {
+                final RandomizedQueue<Integer> locked =
+                        new RandomizedQueue<Integer>();
+                final ConcurrentRandomizedQueue<Integer> concurrent =
+                        new ConcurrentRandomizedQueue<Integer>();
+                for (int i = 0; i < items; i++) {
+                    locked.enqueue(ITEMS[i]);
+                    concurrent.enqueue(ITEMS[i]);
+                }
+
+                executor = Executors.newFixedThreadPool(threads);
+                tasks = new ArrayList<Callable<Long>>();
+                for (int k = 0; k < threads; k++) {
+                    tasks.add(new Callable<Long>() {
+                        @Override
+                        public Long call() {
+                            long sum = 0;
+                            for (int i = 0; i < 1024; i++) {
+                                if (striped) {
+                                    concurrent.enqueue(ITEMS[i]);
+                                    sum += concurrent.dequeue();
+                                } else {
+                                    synchronized (locked) {
+                                        locked.enqueue(ITEMS[i]);
+                                    }
+                                    synchronized (locked) {
+                                        sum += locked.dequeue();
+                                    }
+                                }
+                            }
+                            return sum;
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public long run() {
+                try {
+                    for (Future<Long> future : executor.invokeAll(tasks)) {
+                        sink += future.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                return 2048L * threads;
+            }
+
+            @Override
+            public void tearDown() {
+                executor.shutdownNow();
+            }
+        };
+    }
+
+    /**
+     * Fills a ConcurrentRandomizedQueue with 1024 items per thread and
+     * empties it again on the given number of threads. While it drains,
+     * the stripes get uneven and the largest ones empty last.
+     */
+    private static Benchmark randomizedDrain(final int threads) {
+        return new Benchmark("randomized.drain\tthreads=" + threads) {
+            private ExecutorService executor;
+            private List<Callable<Long>> tasks;
+
+            @Override
+            public void setUp() {
+                final ConcurrentRandomizedQueue<Integer> queue =
+                        new ConcurrentRandomizedQueue<Integer>();
+                executor = Executors.newFixedThreadPool(threads);
+                tasks = new ArrayList<Callable<Long>>();
+                for (int k = 0; k < threads; k++) {
+                    tasks.add(new Callable<Long>() {
+                        @Override
+                        public Long call() {
+                            long sum = 0;
+                            for (int i = 0; i < 1024; i++) {
+                                queue.enqueue(ITEMS[i]);
+                            }
+                            for (int i = 0; i < 1024; i++) {
+                                sum += queue.dequeue();
+                            }
+                            return sum;
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public long run() {
+                try {
+                    for (Future<Long> future : executor.invokeAll(tasks)) {
+                        sink += future.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                return 2048L * threads;
+            }
+
+            @Override
+            public void tearDown() {
+                executor.shutdownNow();
+            }
+        };
+    }
+
+    /**
+     * Runs warmup and measurement iterations and prints the mean and
+     * the standard deviation of throughput along with bytes allocated
+     * per op by the benchmarking thread.
+     */
+    private static void measure(Benchmark benchmark) {
+        benchmark.setUp();
+        for (int k = 0; k < WARMUP_ITERATIONS; k++) {
+            iterate(benchmark);
+        }
+
+        double[] throughput = new double[MEASUREMENT_ITERATIONS];
+        long ops = 0;
+        long allocated = allocatedBytes();
+        for (int k = 0; k < MEASUREMENT_ITERATIONS; k++) {
+            long start = System.nanoTime();
+            long iterationOps = iterate(benchmark);
+            long elapsed = System.nanoTime() - start;
+
+            throughput[k] = iterationOps * 1e9 / elapsed;
+            ops += iterationOps;
+        }
+        allocated = allocatedBytes() - allocated;
+        benchmark.tearDown();
+
+        StdOut.printf("%s\t%.1f\t%.1f\t%.2f%n", benchmark.name,
+                StdStats.mean(throughput), StdStats.stddev(throughput),
+                allocated < 0 ? Double.NaN : ((double) allocated) / ops);
+    }
+
+    private static long iterate(Benchmark benchmark) {
+        long ops = 0;
+        long start = System.nanoTime();
+        do {
+            ops += benchmark.run();
+        } while (System.nanoTime() - start < ITERATION_NANOS);
+        return ops;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far,
+     * or -1 if the JVM does not count them.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Client of the class. Runs the benchmarks whose names contain
+     * the filter, or all of them.
+     */
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (int size : SIZES) {
+            benchmarks.add(dequeFifo(size));
+            benchmarks.add(intDequeFifo(size));
+            benchmarks.add(dequeLifo(size));
+            benchmarks.add(dequeSteady(size));
+            benchmarks.add(dequeIterate(size));
+        }
+        benchmarks.add(randomizedBatch(false));
+        benchmarks.add(randomizedBatch(true));
+        for (int items : new int[] {10, 1 << 20}) {
+            benchmarks.add(randomizedIterate(items));
+        }
+        benchmarks.add(stealingOwner(1024));
+        benchmarks.add(stealingLocked(1024));
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (cores > 1) {
+            benchmarks.add(stealingThieves(cores));
+        }
+        for (int threads : new int[] {1, cores}) {
+            for (int items : new int[] {4, 1024}) {
+                benchmarks.add(randomized(threads, false, items));
+                benchmarks.add(randomized(threads, true, items));
+            }
+            benchmarks.add(randomizedDrain(threads));
+            if (cores == 1) break;
+        }
+        benchmarks.add(subset("scanner"));
+        benchmarks.add(subset("queue"));
+        benchmarks.add(subset("reservoir"));
+
+        StdOut.println("benchmark\tparameter\tops/s\tstddev\tbytes/op");
+        for (Benchmark benchmark : benchmarks) {
+            if (benchmark.name.contains(filter)) {
+                measure(benchmark);
+            }
+        }
+    }
+
+}
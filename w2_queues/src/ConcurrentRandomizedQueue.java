@@ -0,0 +1,302 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       9/1/2012
+ *  Last updated:  9/1/2012
+ *
+ *  Models a randomized queue that many threads can use at once.
+ *  Items are spread over stripes guarded by their own locks, so that
+ *  threads working on different stripes do not wait for each other.
+ *  The sizes of the stripes are kept in a Fenwick tree, so that
+ *  a stripe can be drawn in proportion to its size without locks.
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ConcurrentRandomizedQueue<Item> implements Iterable<Item> {
+
+    private Stripe<Item>[] stripes; // Independently locked parts of
+                                    // the queue
+    private AtomicIntegerArray sizes; // Fenwick tree of stripe sizes,
+                                      // indexed from 1 up to a power of
+                                      // two, whose last cell is the total
+
+    /**
+     * Creates the randomized queue object with four stripes per
+     * available processor.
+     */
+    public ConcurrentRandomizedQueue() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the randomized queue object with the given number of
+     * stripes.
+     *
+     * @param stripeCount the number of stripes
+     */
+    public ConcurrentRandomizedQueue(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException(
+                    "Only positive number of stripes allowed");
+        }
+
+        this.stripes = (Stripe<Item>[]) new Stripe<?>[stripeCount];
+        for (int k = 0; k < stripeCount; k++) {
+            stripes[k] = new Stripe<Item>();
+        }
+        int treeSize = Integer.highestOneBit(stripeCount);
+        if (treeSize < stripeCount) {
+            treeSize *= 2;
+        }
+        this.sizes = new AtomicIntegerArray(treeSize + 1);
+    }
+
+    /**
+     * Adds the item to the queue. The item goes to a random stripe,
+     * or to the next one that is not locked at the moment, so that
+     * stripes stay balanced and threads rarely wait.
+     *
+     * @param item the item to add
+     * @throws NullPointerException if the item is null
+     */
+    public void enqueue(Item item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+
+        int k = ThreadLocalRandom.current().nextInt(stripes.length);
+        for (int tries = 1; tries < stripes.length; tries++) {
+            if (stripes[k].tryLock()) {
+                try {
+                    add(k, item);
+                    return;
+                } finally {
+                    stripes[k].unlock();
+                }
+            }
+            k = (k + 1) % stripes.length;
+        }
+
+        stripes[k].lock();
+        try {
+            add(k, item);
+        } finally {
+            stripes[k].unlock();
+        }
+    }
+
+    /**
+     * Deletes and returns a random item from the queue. While no other
+     * thread changes the queue, every item is equally likely to be
+     * removed. Concurrent changes may bias the choice slightly.
+     *
+     * @return a random item from the queue
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public Item dequeue() {
+        return take(true);
+    }
+
+    /**
+     * Returns (but does not delete) a random item from the queue.
+     *
+     * @return a random item from the queue
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public Item sample() {
+        return take(false);
+    }
+
+    /**
+     * Checks if the queue is empty. The answer may be outdated by the time
+     * it is returned if other threads use the queue.
+     *
+     * @return true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of items in the queue. The answer may be outdated
+     * by the time it is returned if other threads use the queue.
+     *
+     * @return the number of items in the queue.
+     */
+    public int size() {
+        return sizes.get(sizes.length() - 1);
+    }
+
+    /**
+     * Adds the item to the k-th stripe and counts it in the tree.
+     * The caller holds the stripe's lock.
+     */
+    private void add(int k, Item item) {
+        stripes[k].add(item);
+        changeSize(k, 1);
+    }
+
+    /**
+     * Picks a random item: draws a stripe in proportion to its size from
+     * the tree, then a random index in the stripe under its lock. Every
+     * item is drawn with the same probability, no matter how uneven
+     * the stripes are. A stripe found empty under its lock was drawn
+     * from sizes changed meanwhile, so the draw is repeated.
+     *
+     * @throws NoSuchElementException if the queue is empty
+     */
+    private Item take(boolean remove) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            int total = size();
+            if (total <= 0) {
+                throw new NoSuchElementException();
+            }
+
+            int k = find(random.nextInt(total));
+            if (k >= stripes.length) continue;
+
+            Stripe<Item> stripe = stripes[k];
+            stripe.lock();
+            try {
+                if (stripe.size > 0) {
+                    int index = random.nextInt(stripe.size);
+                    if (!remove) return stripe.values[index];
+
+                    changeSize(k, -1);
+                    return stripe.remove(index);
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    /**
+     * Adds the change to the size of the k-th stripe to the tree.
+     * The caller holds the stripe's lock.
+     */
+    private void changeSize(int k, int change) {
+        for (int i = k + 1; i < sizes.length(); i += i & -i) {
+            sizes.addAndGet(i, change);
+        }
+    }
+
+    /**
+     * Returns the index of the stripe that holds the rank-th item, if
+     * items are counted stripe by stripe. The answer may be out of range
+     * if sizes change while the tree is read.
+     */
+    private int find(int rank) {
+        int k = 0;
+        for (int step = (sizes.length() - 1) / 2; step > 0; step /= 2) {
+            int count = sizes.get(k + step);
+            if (count <= rank) {
+                k += step;
+                rank -= count;
+            }
+        }
+        return k;
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        return new ConcurrentRandomizedQueueIterator();
+    }
+
+    /**
+     * An independent iterator over items in random order. It iterates
+     * over a copy of every stripe taken under its lock, so it never fails
+     * but may miss changes made while it was created.
+     */
+    private class ConcurrentRandomizedQueueIterator implements Iterator<Item> {
+        private Object[] iteratorValues;
+        private int marker;
+
+        public ConcurrentRandomizedQueueIterator() {
+            List<Item> items = new ArrayList<Item>();
+            for (Stripe<Item> stripe : stripes) {
+                stripe.lock();
+                try {
+                    for (int i = 0; i < stripe.size; i++) {
+                        items.add(stripe.values[i]);
+                    }
+                } finally {
+                    stripe.unlock();
+                }
+            }
+            this.iteratorValues = items.toArray();
+            StdRandom.shuffle(this.iteratorValues);
+
+            this.marker = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return marker < iteratorValues.length;
+        }
+
+        @Override
+        public Item next() {
+            if (marker >= iteratorValues.length) {
+                throw new NoSuchElementException();
+            }
+            return (Item) iteratorValues[marker++];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A resizing array of items guarded by its own lock.
+     *
+     * @param <Item> element's type
+     */
+    private static class Stripe<Item> extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        private Item[] values = (Item[]) new Object[1]; // The items
+        private volatile int size; // The number of items, read without
+                                   // the lock to choose a stripe
+
+        /** Adds the item. The caller holds the lock. */
+        public void add(Item item) {
+            if (size == values.length) {
+                resizeValuesArray(values.length * 2);
+            }
+            values[size] = item;
+            size++;
+        }
+
+        /** Removes the item at the index. The caller holds the lock. */
+        public Item remove(int index) {
+            Item item = values[index];
+            values[index] = values[size - 1];
+            values[size - 1] = null;
+            size--;
+
+            if (size > 0 && size <= values.length / 4) {
+                resizeValuesArray(values.length / 2);
+            }
+            return item;
+        }
+
+        private void resizeValuesArray(int newSize) {
+            Item[] newValues = (Item[]) new Object[newSize];
+            System.arraycopy(values, 0, newValues, 0, size);
+
+            values = newValues;
+        }
+    }
+
+}
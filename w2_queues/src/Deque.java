@@ -13,17 +13,17 @@ import java.util.NoSuchElementException;
 
 public class Deque<Item> implements Iterable<Item> {
 
-    private Node<Item> head; // The front node of the queue
-    private Node<Item> tail; // The end node of the queue
-
+    private Item[] values; // The circular resizing array to keep the queue,
+                           // its length is a power of two
+    private int head; // The index of the front item
     private int size; // The size of the queue
 
     /**
      * Creates the deque object
      */
     public Deque() {
-        this.head = null;
-        this.tail = null;
+        this.values = (Item[]) new Object[1];
+        this.head = 0;
         this.size = 0;
     }
 
@@ -38,18 +38,11 @@ public class Deque<Item> implements Iterable<Item> {
             throw new NullPointerException();
         }
 
-        Node<Item> newNode = new Node<Item>();
-        newNode.setItem(item);
-        newNode.setNext(head);
-        newNode.setPrevious(null);
-
-        if (isEmpty()) {
-            head = newNode;
-            tail = newNode;
-        } else {
-            head.setPrevious(newNode);
-            head = newNode;
+        if (size == values.length) {
+            resizeValuesArray(values.length * 2);
         }
+        head = (head - 1) & (values.length - 1);
+        values[head] = item;
         size++;
     }
 
@@ -64,18 +57,10 @@ public class Deque<Item> implements Iterable<Item> {
             throw new NullPointerException();
         }
 
-        Node<Item> newNode = new Node<Item>();
-        newNode.setItem(item);
-        newNode.setNext(null);
-        newNode.setPrevious(tail);
-
-        if (isEmpty()) {
-            head = newNode;
-            tail = newNode;
-        } else {
-            tail.setNext(newNode);
-            tail = newNode;
+        if (size == values.length) {
+            resizeValuesArray(values.length * 2);
         }
+        values[(head + size) & (values.length - 1)] = item;
         size++;
     }
 
@@ -90,15 +75,13 @@ public class Deque<Item> implements Iterable<Item> {
             throw new NoSuchElementException();
         }
 
-        Item item = head.getItem();
-
+        Item item = values[head];
+        values[head] = null;
+        head = (head + 1) & (values.length - 1);
         size--;
-        if (isEmpty()) {
-            head = null;
-            tail = null;
-        } else {
-            head.getNext().setPrevious(null);
-            head = head.getNext();
+
+        if (size > 0 && size <= values.length / 4) {
+            resizeValuesArray(values.length / 2);
         }
 
         return item;
@@ -115,15 +98,13 @@ public class Deque<Item> implements Iterable<Item> {
             throw new NoSuchElementException();
         }
 
-        Item item = tail.getItem();
-
+        int index = (head + size - 1) & (values.length - 1);
+        Item item = values[index];
+        values[index] = null;
         size--;
-        if (isEmpty()) {
-            head = null;
-            tail = null;
-        } else {
-            tail.getPrevious().setNext(null);
-            tail = tail.getPrevious();
+
+        if (size > 0 && size <= values.length / 4) {
+            resizeValuesArray(values.length / 2);
         }
 
         return item;
@@ -147,6 +128,28 @@ public class Deque<Item> implements Iterable<Item> {
         return size;
     }
 
+    /**
+     * Returns the length of the array, for tests to check when it grows
+     * and shrinks.
+     */
+    int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Moves the items to a new array of the given length, unwrapping them
+     * so that the front item is at index 0.
+     */
+    private void resizeValuesArray(int newSize) {
+        Item[] newValues = (Item[]) new Object[newSize];
+        int firstPart = Math.min(size, values.length - head);
+        System.arraycopy(values, head, newValues, 0, firstPart);
+        System.arraycopy(values, 0, newValues, firstPart, size - firstPart);
+
+        values = newValues;
+        head = 0;
+    }
+
     @Override
     public Iterator<Item> iterator() {
         return new DequeIterator();
@@ -156,22 +159,21 @@ public class Deque<Item> implements Iterable<Item> {
      * An iterator over items of the queue in order from front to end.
      */
     private class DequeIterator implements Iterator<Item> {
-        private Node<Item> current = head; // The current node of traversal
+        private int marker = 0; // The position of the next item
+                                // from the front
 
         @Override
         public boolean hasNext() {
-            return current != null;
+            return marker < size;
         }
 
         @Override
         public Item next() {
-            if (current == null) {
+            if (marker >= size) {
                 throw new NoSuchElementException();
             }
 
-            Item item = current.getItem();
-            current = current.getNext();
-            return item;
+            return values[(head + marker++) & (values.length - 1)];
         }
 
         @Override
@@ -180,32 +182,4 @@ public class Deque<Item> implements Iterable<Item> {
         }
     }
 
-    /**
-     * Models a node in a linked list.
-     *
-     * @param <Item> element's type
-     */
-    private static class Node<Item> {
-        private Item item; // The payload element
-        private Node<Item> next; // The pointer to the next node
-        private Node<Item> previous; // The pointer to the previous node
-
-        /** Returns the payload element. */
-        public Item getItem() { return item; }
-        /** Sets the payload element. */
-        public void setItem(Item newItem) { this.item = newItem; }
-
-        /** Returns the pointer to the next node */
-        public Node<Item> getNext() { return next; }
-        /** Sets the pointer to the next node */
-        public void setNext(Node<Item> newNext) { this.next = newNext; }
-
-        /** Returns the pointer to the previous node */
-        public Node<Item> getPrevious() { return previous; }
-        /** Sets the pointer to the previous node */
-        public void setPrevious(Node<Item> newPrevious) {
-            this.previous = newPrevious;
-        }
-    }
-
 }
@@ -0,0 +1,162 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       9/1/2012
+ *  Last updated:  9/1/2012
+ *
+ *  Models a double-ended queue of int values, kept in an int array
+ *  without boxing. The Long version is the same file with int values
+ *  replaced by long ones.
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.NoSuchElementException;
+
+public class IntDeque {
+
+    private int[] values; // The circular resizing array to keep the queue,
+                          // its length is a power of two
+    private int head; // The index of the front value
+    private int size; // The size of the queue
+
+    /**
+     * Creates the deque object
+     */
+    public IntDeque() {
+        this.values = new int[1];
+        this.head = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Inserts the value at the front of the queue.
+     *
+     * @param value the value to add
+     */
+    public void addFirst(int value) {
+        if (size == values.length) {
+            resizeValuesArray(values.length * 2);
+        }
+        head = (head - 1) & (values.length - 1);
+        values[head] = value;
+        size++;
+    }
+
+    /**
+     * Inserts the value at the end of the queue.
+     *
+     * @param value the value to add
+     */
+    public void addLast(int value) {
+        if (size == values.length) {
+            resizeValuesArray(values.length * 2);
+        }
+        values[(head + size) & (values.length - 1)] = value;
+        size++;
+    }
+
+    /**
+     * Deletes and returns the value at the front of the queue.
+     *
+     * @return the value at the front
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public int removeFirst() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        int value = values[head];
+        head = (head + 1) & (values.length - 1);
+        size--;
+
+        if (size > 0 && size <= values.length / 4) {
+            resizeValuesArray(values.length / 2);
+        }
+
+        return value;
+    }
+
+    /**
+     * Deletes and returns the value at the end of the queue.
+     *
+     * @return the value at the end
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public int removeLast() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        int value = values[(head + size - 1) & (values.length - 1)];
+        size--;
+
+        if (size > 0 && size <= values.length / 4) {
+            resizeValuesArray(values.length / 2);
+        }
+
+        return value;
+    }
+
+    /**
+     * Checks if the queue is empty.
+     *
+     * @return true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of values in the queue.
+     *
+     * @return the number of values in the queue.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves the values to a new array of the given length, unwrapping
+     * them so that the front value is at index 0.
+     */
+    private void resizeValuesArray(int newSize) {
+        int[] newValues = new int[newSize];
+        int firstPart = Math.min(size, values.length - head);
+        System.arraycopy(values, head, newValues, 0, firstPart);
+        System.arraycopy(values, 0, newValues, firstPart, size - firstPart);
+
+        values = newValues;
+        head = 0;
+    }
+
+    /**
+     * Returns an iterator over values of the queue in order from front
+     * to end.
+     */
+    public IntIterator iterator() {
+        return new IntDequeIterator();
+    }
+
+    /**
+     * An iterator over values of the queue in order from front to end.
+     */
+    private class IntDequeIterator implements IntIterator {
+        private int marker = 0; // The position of the next value
+                                // from the front
+
+        @Override
+        public boolean hasNext() {
+            return marker < size;
+        }
+
+        @Override
+        public int next() {
+            if (marker >= size) {
+                throw new NoSuchElementException();
+            }
+
+            return values[(head + marker++) & (values.length - 1)];
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       9/1/2012
+ *  Last updated:  9/1/2012
+ *
+ *  Models a randomized queue of int values, kept in an int array
+ *  without boxing. The Long version is the same file with int values
+ *  replaced by long ones.
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.NoSuchElementException;
+
+public class IntRandomizedQueue {
+
+    private int[] values; // The resizing array to keep the queue
+    private int size; // The number of elements in the queue
+
+    /**
+     * Creates the randomized queue object
+     */
+    public IntRandomizedQueue() {
+        this.values = new int[1];
+        this.size = 0;
+    }
+
+    /**
+     * Adds the value to the end of the queue.
+     *
+     * @param value the value to add
+     */
+    public void enqueue(int value) {
+        if (size == values.length) {
+            resizeValuesArray(values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Deletes and returns a random value from the queue.
+     *
+     * @return a random value from the queue
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public int dequeue() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        int index = StdRandom.uniform(size);
+        int value = values[index];
+
+        values[index] = values[size - 1];
+        size--;
+
+        if (size > 0 && size <= values.length / 4) {
+            resizeValuesArray(values.length / 2);
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns (but does not delete) a random value from the queue.
+     *
+     * @return a random value from the queue
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public int sample() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        return values[StdRandom.uniform(size)];
+    }
+
+    /**
+     * Checks if the queue is empty.
+     *
+     * @return true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of values in the queue.
+     *
+     * @return the number of values in the queue.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void resizeValuesArray(int newSize) {
+        int[] newValues = new int[newSize];
+        System.arraycopy(values, 0, newValues, 0, size);
+
+        values = newValues;
+    }
+
+    /**
+     * Returns an independent iterator over values in random order.
+     */
+    public IntIterator iterator() {
+        return new IntRandomizedQueueIterator();
+    }
+
+    /**
+     * An independent iterator over values in random order.
+     */
+    private class IntRandomizedQueueIterator implements IntIterator {
+        private int[] iteratorValues;
+        private int marker;
+
+        public IntRandomizedQueueIterator() {
+            this.iteratorValues = new int[size];
+            System.arraycopy(values, 0, this.iteratorValues, 0, size);
+
+            // Knuth shuffle
+            for (int i = 1; i < iteratorValues.length; i++) {
+                int r = StdRandom.uniform(i + 1);
+                int swap = iteratorValues[r];
+                iteratorValues[r] = iteratorValues[i];
+                iteratorValues[i] = swap;
+            }
+
+            this.marker = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return marker < iteratorValues.length;
+        }
+
+        @Override
+        public int next() {
+            if (marker >= iteratorValues.length) {
+                throw new NoSuchElementException();
+            }
+            return iteratorValues[marker++];
+        }
+    }
+
+}
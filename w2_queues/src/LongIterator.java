@@ -0,0 +1,29 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       9/1/2012
+ *  Last updated:  9/1/2012
+ *
+ *  An iterator over long values that does not box them.
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.NoSuchElementException;
+
+public interface LongIterator {
+
+    /**
+     * Checks if the iteration has more values.
+     *
+     * @return true if there are more values
+     */
+    boolean hasNext();
+
+    /**
+     * Returns the next value.
+     *
+     * @return the next value
+     * @throws NoSuchElementException if there are no more values
+     */
+    long next();
+
+}
@@ -0,0 +1,145 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       9/1/2012
+ *  Last updated:  9/1/2012
+ *
+ *  Models a randomized queue of long values, kept in a long array
+ *  without boxing. It is the Int version with int values
+ *  replaced by long ones.
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.NoSuchElementException;
+
+public class LongRandomizedQueue {
+
+    private long[] values; // The resizing array to keep the queue
+    private int size; // The number of elements in the queue
+
+    /**
+     * Creates the randomized queue object
+     */
+    public LongRandomizedQueue() {
+        this.values = new long[1];
+        this.size = 0;
+    }
+
+    /**
+     * Adds the value to the end of the queue.
+     *
+     * @param value the value to add
+     */
+    public void enqueue(long value) {
+        if (size == values.length) {
+            resizeValuesArray(values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Deletes and returns a random value from the queue.
+     *
+     * @return a random value from the queue
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public long dequeue() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        int index = StdRandom.uniform(size);
+        long value = values[index];
+
+        values[index] = values[size - 1];
+        size--;
+
+        if (size > 0 && size <= values.length / 4) {
+            resizeValuesArray(values.length / 2);
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns (but does not delete) a random value from the queue.
+     *
+     * @return a random value from the queue
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public long sample() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        return values[StdRandom.uniform(size)];
+    }
+
+    /**
+     * Checks if the queue is empty.
+     *
+     * @return true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of values in the queue.
+     *
+     * @return the number of values in the queue.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void resizeValuesArray(int newSize) {
+        long[] newValues = new long[newSize];
+        System.arraycopy(values, 0, newValues, 0, size);
+
+        values = newValues;
+    }
+
+    /**
+     * Returns an independent iterator over values in random order.
+     */
+    public LongIterator iterator() {
+        return new LongRandomizedQueueIterator();
+    }
+
+    /**
+     * An independent iterator over values in random order.
+     */
+    private class LongRandomizedQueueIterator implements LongIterator {
+        private long[] iteratorValues;
+        private int marker;
+
+        public LongRandomizedQueueIterator() {
+            this.iteratorValues = new long[size];
+            System.arraycopy(values, 0, this.iteratorValues, 0, size);
+
+            // Knuth shuffle
+            for (int i = 1; i < iteratorValues.length; i++) {
+                int r = StdRandom.uniform(i + 1);
+                long swap = iteratorValues[r];
+                iteratorValues[r] = iteratorValues[i];
+                iteratorValues[i] = swap;
+            }
+
+            this.marker = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return marker < iteratorValues.length;
+        }
+
+        @Override
+        public long next() {
+            if (marker >= iteratorValues.length) {
+                throw new NoSuchElementException();
+            }
+            return iteratorValues[marker++];
+        }
+    }
+
+}
@@ -9,13 +9,19 @@
  *
  *----------------------------------------------------------------*/
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 public class RandomizedQueue<Item> implements Iterable<Item> {
 
     private Item[] values; // The resizing array to keep the queue
     private int size; // The number of elements in the queue
+    private int modifications; // The number of changes, so that
+                               // iterators notice them
 
     /**
      * Creates the randomized queue object
@@ -40,6 +46,31 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
             resizeValuesArray(values.length * 2);
         }
         values[size++] = item;
+        modifications++;
+    }
+
+    /**
+     * Adds the items to the end of the queue, growing the array at most
+     * once.
+     *
+     * @param items the items to add
+     * @throws NullPointerException if any item is null, in which case
+     *         none is added
+     */
+    public void enqueueAll(Item[] items) {
+        addAll(items);
+    }
+
+    /**
+     * Adds the items of the collection to the end of the queue, growing
+     * the array at most once.
+     *
+     * @param items the items to add
+     * @throws NullPointerException if any item is null, in which case
+     *         none is added
+     */
+    public void enqueueAll(Collection<? extends Item> items) {
+        addAll(items.toArray());
     }
 
     /**
@@ -60,6 +91,7 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
 
         values[size - 1] = null;
         size--;
+        modifications++;
 
         if (size > 0 && size <= values.length / 4) {
             resizeValuesArray(values.length / 2);
@@ -68,6 +100,65 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         return item;
     }
 
+    /**
+     * Deletes and returns k random items from the queue, each subset of
+     * k items being equally likely. A partial Fisher-Yates shuffle moves
+     * the chosen items to the end of the array, which then shrinks at
+     * most once.
+     *
+     * @param k the number of items
+     * @return the items in random order
+     * @throws IllegalArgumentException if k is negative
+     * @throws NoSuchElementException if the queue has fewer than k items
+     */
+    public List<Item> dequeue(int k) {
+        checkBatchSize(k);
+
+        List<Item> items = new ArrayList<Item>(k);
+        for (int i = 0; i < k; i++) {
+            int last = size - 1 - i;
+            int index = StdRandom.uniform(last + 1);
+            items.add(values[index]);
+            values[index] = values[last];
+            values[last] = null;
+        }
+        size -= k;
+        if (k > 0) {
+            modifications++;
+        }
+
+        int newSize = values.length;
+        while (size > 0 && size <= newSize / 4) {
+            newSize /= 2;
+        }
+        if (newSize < values.length) {
+            resizeValuesArray(newSize);
+        }
+
+        return items;
+    }
+
+    /**
+     * Returns (but does not delete) k random items of the queue without
+     * repeats. It takes the first k items of a new iterator, which
+     * shuffles lazily, so it takes time proportional to k.
+     *
+     * @param k the number of items
+     * @return the items in random order
+     * @throws IllegalArgumentException if k is negative
+     * @throws NoSuchElementException if the queue has fewer than k items
+     */
+    public List<Item> sample(int k) {
+        checkBatchSize(k);
+
+        List<Item> items = new ArrayList<Item>(k);
+        Iterator<Item> iterator = iterator();
+        for (int i = 0; i < k; i++) {
+            items.add(iterator.next());
+        }
+        return items;
+    }
+
     /**
      * Returns (but does not delete) a random item from the queue.
      *
@@ -102,6 +193,39 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         return size;
     }
 
+    /**
+     * Adds the items after checking that none of them is null.
+     */
+    private void addAll(Object[] items) {
+        for (Object item : items) {
+            if (item == null) {
+                throw new NullPointerException();
+            }
+        }
+
+        int newSize = values.length;
+        while (newSize < size + items.length) {
+            newSize *= 2;
+        }
+        if (newSize > values.length) {
+            resizeValuesArray(newSize);
+        }
+        System.arraycopy(items, 0, values, size, items.length);
+        size += items.length;
+        if (items.length > 0) {
+            modifications++;
+        }
+    }
+
+    private void checkBatchSize(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Only non-negative k allowed");
+        }
+        if (k > size) {
+            throw new NoSuchElementException();
+        }
+    }
+
     private void resizeValuesArray(int newSize) {
         Item[] newValues = (Item[]) new Object[newSize];
         System.arraycopy(values, 0, newValues, 0, size);
@@ -115,38 +239,150 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
     }
 
     /**
-     * An independent iterator over items in random order.
+     * An independent iterator over items in random order. It shuffles
+     * lazily: every call to next does one step of a Fisher-Yates shuffle
+     * of the positions, keeping only the positions the steps have moved.
+     * Creating it takes constant time, and its memory grows with the number
+     * of items returned. Once the moved positions are a sixteenth of all,
+     * it copies the items left and finishes the shuffle of the copy at
+     * once, which is much faster than hashing and not much larger by
+     * then. It fails if the queue changes while iterating.
      */
     private class RandomizedQueueIterator implements Iterator<Item> {
-        private Item[] iteratorValues;
-        private int marker;
-
-        public RandomizedQueueIterator() {
-            this.iteratorValues = (Item[]) new Object[size];
-            System.arraycopy(values, 0, this.iteratorValues, 0, size);
-            StdRandom.shuffle(this.iteratorValues);
-
-            this.marker = 0;
-        }
+        private int marker = 0; // The number of items returned
+        private int expectedModifications = modifications; // Changes
+                                                           // seen at start
+        private SwapMap swaps = new SwapMap(); // Positions of the shuffle
+                                               // that hold other items
+        private Item[] shuffled; // Items at every position, once
+                                 // the swaps are too many
 
         @Override
         public boolean hasNext() {
-            return marker < iteratorValues.length;
+            return marker < size;
         }
 
         @Override
         public Item next() {
-            try {
-                return iteratorValues[marker++];
-            } catch (ArrayIndexOutOfBoundsException e) {
+            if (modifications != expectedModifications) {
+                throw new ConcurrentModificationException();
+            }
+            if (marker >= size) {
                 throw new NoSuchElementException();
             }
+
+            if (shuffled == null && swaps.count > size / 16) {
+                shuffleRest();
+            }
+            if (shuffled != null) {
+                return shuffled[marker++];
+            }
+
+            int position = marker + StdRandom.uniform(size - marker);
+            Item item = values[swaps.get(position)];
+            if (position != marker) {
+                swaps.put(position, swaps.get(marker));
+            }
+            marker++;
+            return item;
         }
 
         @Override
         public void remove() {
             throw new UnsupportedOperationException();
         }
+
+        /**
+         * Copies the items at positions not returned yet and shuffles
+         * them, which finishes the shuffle of all positions.
+         */
+        private void shuffleRest() {
+            shuffled = (Item[]) new Object[size];
+            System.arraycopy(values, marker, shuffled, marker, size - marker);
+            swaps.copyTo(shuffled, values, marker);
+            swaps = null;
+
+            for (int p = marker; p < size - 1; p++) {
+                int q = p + StdRandom.uniform(size - p);
+                Item swap = shuffled[p];
+                shuffled[p] = shuffled[q];
+                shuffled[q] = swap;
+            }
+        }
+    }
+
+    /**
+     * A map of positions to indexes of the items at them, where a missing
+     * position holds its own item. It is an open addressing hash table,
+     * so that its entries take no boxed integers.
+     */
+    private static class SwapMap {
+        private int[] keys = new int[16]; // Positions plus one, 0 in free
+                                          // slots
+        private int[] indexes = new int[16]; // Indexes at the positions
+        private int count; // The number of positions kept
+
+        /** Returns the index of the item at the position. */
+        public int get(int position) {
+            int slot = find(keys, position);
+            if (keys[slot] == 0) return position;
+            return indexes[slot];
+        }
+
+        /** Puts the item of the index at the position. */
+        public void put(int position, int index) {
+            int slot = find(keys, position);
+            if (keys[slot] == 0) {
+                if (2 * (count + 1) > keys.length) {
+                    resize(keys.length * 2);
+                    slot = find(keys, position);
+                }
+                keys[slot] = position + 1;
+                count++;
+            }
+            indexes[slot] = index;
+        }
+
+        /**
+         * Puts the items of the kept positions from the given one on
+         * at those positions of the target.
+         */
+        public <Item> void copyTo(Item[] target, Item[] values, int from) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] > from) {
+                    target[keys[slot] - 1] = values[indexes[slot]];
+                }
+            }
+        }
+
+        /**
+         * Returns the slot of the position, or the free slot where
+         * it belongs, probing linearly from its hash.
+         */
+        private static int find(int[] keys, int position) {
+            int mask = keys.length - 1;
+            int hash = position * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != 0 && keys[slot] != position + 1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void resize(int newSize) {
+            int[] newKeys = new int[newSize];
+            int[] newIndexes = new int[newSize];
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) {
+                    int newSlot = find(newKeys, keys[slot] - 1);
+                    newKeys[newSlot] = keys[slot];
+                    newIndexes[newSlot] = indexes[slot];
+                }
+            }
+
+            keys = newKeys;
+            indexes = newIndexes;
+        }
     }
 
 }
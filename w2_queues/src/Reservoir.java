@@ -0,0 +1,272 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       9/1/2012
+ *  Last updated:  9/1/2012
+ *
+ *  Models a reservoir that keeps a uniform random sample of k items
+ *  from a stream of unknown length. Instead of drawing a random number
+ *  for every item, it draws how many items to skip before the next
+ *  replacement (Algorithm L), so most items cost no random numbers.
+ *  Reservoirs of disjoint streams can be merged into a sample of their
+ *  union.
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class Reservoir<Item> implements Iterable<Item> {
+
+    private Item[] values; // The sample
+    private int size; // The number of items in the sample
+    private long seen; // The number of items of the stream so far
+    private long next; // The number of the item to replace one in
+                       // the sample, counted from 1
+    private double w; // The largest key in the sample, if every item
+                      // of the stream got a uniform random key and
+                      // the sample kept the k smallest
+    private boolean merged; // True if the reservoir is a merge, which
+                            // has no keys to go on with
+
+    /**
+     * Creates the reservoir of the given capacity.
+     *
+     * @param k the number of items to keep
+     */
+    public Reservoir(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Only non-negative k allowed");
+        }
+
+        this.values = (Item[]) new Object[k];
+        this.size = 0;
+        this.seen = 0;
+        if (k > 0) {
+            this.w = Math.exp(Math.log(uniform()) / k);
+            this.next = after(k);
+        } else {
+            this.next = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Offers the next item of the stream. The item is kept if the sample
+     * is not full yet or if it is the item drawn to replace one.
+     *
+     * @param item the next item of the stream
+     * @throws NullPointerException if the item is null
+     * @throws IllegalStateException if the reservoir is a merge
+     */
+    public void offer(Item item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        if (merged) {
+            throw new IllegalStateException("Cannot offer to a merge");
+        }
+
+        seen++;
+        if (size < values.length) {
+            values[size++] = item;
+        } else if (seen == next) {
+            values[StdRandom.uniform(size)] = item;
+            w *= Math.exp(Math.log(uniform()) / values.length);
+            next = after(seen);
+        }
+    }
+
+    /**
+     * Returns the number of upcoming items the reservoir would discard,
+     * so that a caller may skip them without reading them. It is zero
+     * until the sample is full.
+     *
+     * @return the number of items to skip
+     */
+    public long skippable() {
+        if (size < values.length) return 0;
+        return next - seen - 1;
+    }
+
+    /**
+     * Counts items of the stream skipped without offering them.
+     *
+     * @param count the number of items skipped
+     * @throws IllegalArgumentException unless 0 <= count <= skippable()
+     * @throws IllegalStateException if the reservoir is a merge
+     */
+    public void skip(long count) {
+        if (merged) {
+            throw new IllegalStateException("Cannot skip in a merge");
+        }
+        if (count < 0 || count > skippable()) {
+            throw new IllegalArgumentException(
+                    "Only up to " + skippable() + " items can be skipped");
+        }
+        seen += count;
+    }
+
+    /**
+     * Checks if the sample is empty.
+     *
+     * @return true if no item has been kept
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of items in the sample.
+     *
+     * @return min(k, the number of items seen)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of items of the stream seen so far, skipped
+     * ones included.
+     *
+     * @return the length of the stream so far
+     */
+    public long seen() {
+        return seen;
+    }
+
+    /**
+     * Merges reservoirs of two disjoint streams into a uniform sample of
+     * their union. Each of the k draws takes an item from the first
+     * sample with probability of the first stream's share of the items
+     * not drawn yet, so the number of items from each stream follows
+     * the same hypergeometric law as if the union were sampled directly.
+     * The merged reservoir can be merged again, but not offered items.
+     *
+     * @param a the reservoir of one stream
+     * @param b the reservoir of the other stream
+     * @param <Item> element's type
+     * @return the reservoir of the union of the streams
+     * @throws IllegalArgumentException if the reservoirs keep different
+     *         numbers of items
+     */
+    public static <Item> Reservoir<Item> merge(Reservoir<Item> a,
+            Reservoir<Item> b) {
+        int k = a.values.length;
+        if (b.values.length != k) {
+            throw new IllegalArgumentException(
+                    "Only reservoirs of the same k can be merged");
+        }
+
+        Reservoir<Item> union = new Reservoir<Item>(k);
+        union.merged = true;
+        union.seen = a.seen + b.seen;
+        union.next = Long.MAX_VALUE;
+
+        Item[] aValues = a.values.clone();
+        Item[] bValues = b.values.clone();
+        int aSize = a.size;
+        int bSize = b.size;
+        long aLeft = a.seen;
+        long bLeft = b.seen;
+        while (union.size < k && aLeft + bLeft > 0) {
+            if (uniform(aLeft + bLeft) < aLeft) {
+                union.values[union.size++] = take(aValues, aSize--);
+                aLeft--;
+            } else {
+                union.values[union.size++] = take(bValues, bSize--);
+                bLeft--;
+            }
+        }
+        return union;
+    }
+
+    /**
+     * Removes a random item of the first size ones of the array by
+     * swapping it with the last of them.
+     */
+    private static <Item> Item take(Item[] values, int size) {
+        int index = StdRandom.uniform(size);
+        Item item = values[index];
+        values[index] = values[size - 1];
+        return item;
+    }
+
+    /**
+     * Returns a uniform random number in [0, n) for n up to 2^60,
+     * rejecting the draws of 60 random bits beyond the largest multiple
+     * of n so that no remainder is more likely than another.
+     */
+    private static long uniform(long n) {
+        long limit = (1L << 60) - (1L << 60) % n;
+        long bits;
+        do {
+            bits = ((long) StdRandom.uniform(1 << 30) << 30)
+                    | StdRandom.uniform(1 << 30);
+        } while (bits >= limit);
+        return bits % n;
+    }
+
+    /**
+     * Draws the number of the next item to keep after the given one.
+     * The number of items discarded in between is geometric, since each
+     * item gets a key below w with probability w. The logarithm of
+     * 1 - w is taken by log1p, since 1.0 - w rounds to 1.0 once w falls
+     * below 2^-53 and would end the replacements for good. A gap that is
+     * not finite or does not fit in a long stops them instead.
+     */
+    private long after(long position) {
+        double gap = Math.floor(Math.log(uniform()) / Math.log1p(-w));
+        if (Double.isNaN(gap) || Double.isInfinite(gap)
+                || gap >= Long.MAX_VALUE - position - 1) {
+            return Long.MAX_VALUE;
+        }
+        return position + (long) gap + 1;
+    }
+
+    /**
+     * Returns a uniform random number in (0, 1], whose logarithm is
+     * finite.
+     */
+    private static double uniform() {
+        return 1.0 - StdRandom.uniform();
+    }
+
+    @Override
+    public Iterator<Item> iterator() {
+        return new ReservoirIterator();
+    }
+
+    /**
+     * An independent iterator over the sample in random order.
+     */
+    private class ReservoirIterator implements Iterator<Item> {
+        private Object[] iteratorValues;
+        private int marker;
+
+        public ReservoirIterator() {
+            this.iteratorValues = new Object[size];
+            System.arraycopy(values, 0, iteratorValues, 0, size);
+            StdRandom.shuffle(this.iteratorValues);
+
+            this.marker = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return marker < iteratorValues.length;
+        }
+
+        @Override
+        public Item next() {
+            if (marker >= iteratorValues.length) {
+                throw new NoSuchElementException();
+            }
+            return (Item) iteratorValues[marker++];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -10,17 +10,70 @@
  *  G
  *  A
  *
+ *  The reservoir mode keeps only k tokens in memory, so it can sample
+ *  streams too large to hold, and skips most tokens without decoding
+ *  them. It prints fewer than k tokens if the input is shorter.
+ *
+ *  % echo A B C D E F G H I | java Subset 3 reservoir
+ *
+ *  Given files, the reservoir mode samples their union: each file gets
+ *  its own reservoir on one of the threads, and finished reservoirs are
+ *  merged by the number of tokens their files had.
+ *
+ *  % java Subset 3 reservoir part-1.txt part-2.txt part-3.txt
+ *
  *----------------------------------------------------------------*/
 
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class Subset {
 
-    public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Provide k as a first param.");
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Provide k as a first param,"
+                    + " optionally the mode: queue or reservoir,"
+                    + " and files for the reservoir mode.");
             return;
         }
         int k = Integer.parseInt(args[0]);
+        String mode = "queue";
+        if (args.length > 1) mode = args[1];
+
+        if ("reservoir".equals(mode) && args.length > 2) {
+            String[] files = new String[args.length - 2];
+            System.arraycopy(args, 2, files, 0, files.length);
+            for (String token : sampleFiles(files, k)) {
+                StdOut.println(token);
+            }
+            return;
+        }
+
+        if ("queue".equals(mode)) {
+            sampleWithQueue(k);
+        } else if ("reservoir".equals(mode)) {
+            TokenReader reader = TokenReader.standardInput();
+            try {
+                for (String token : sampleWithReservoir(reader, k)) {
+                    StdOut.println(token);
+                }
+            } finally {
+                reader.close();
+            }
+        } else {
+            System.out.println("Unknown mode: " + mode);
+        }
+    }
 
+    /**
+     * Loads every token into a randomized queue and dequeues k of them.
+     */
+    private static void sampleWithQueue(int k) {
         RandomizedQueue<String> queue = new RandomizedQueue<String>();
         while (true) {
             if (!StdIn.isEmpty()) {
@@ -36,4 +89,67 @@ public class Subset {
         }
     }
 
+    /**
+     * Keeps a reservoir of k tokens, skipping the tokens it would discard
+     * without reading them into strings.
+     */
+    private static Reservoir<String> sampleWithReservoir(TokenReader reader,
+            int k) throws IOException {
+        Reservoir<String> reservoir = new Reservoir<String>(k);
+        while (true) {
+            long skippable = reservoir.skippable();
+            long skipped = reader.skip(skippable);
+            reservoir.skip(skipped);
+            if (skipped < skippable || reader.isEmpty()) break;
+
+            reservoir.offer(reader.readString());
+        }
+        return reservoir;
+    }
+
+    /**
+     * Samples every file with its own reservoir on a pool of up to one
+     * thread per processor, merging reservoirs as soon as they are done,
+     * so that at most about one reservoir per thread is kept.
+     */
+    private static Reservoir<String> sampleFiles(String[] files, final int k)
+            throws IOException {
+        int threads = Math.min(files.length,
+                Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<Reservoir<String>> completion =
+                    new ExecutorCompletionService<Reservoir<String>>(executor);
+            for (final String file : files) {
+                completion.submit(new Callable<Reservoir<String>>() {
+                    @Override
+                    public Reservoir<String> call() throws IOException {
+                        TokenReader reader = TokenReader.open(file);
+                        try {
+                            return sampleWithReservoir(reader, k);
+                        } finally {
+                            reader.close();
+                        }
+                    }
+                });
+            }
+
+            Reservoir<String> union = new Reservoir<String>(k);
+            for (int i = 0; i < files.length; i++) {
+                union = Reservoir.merge(union, completion.take().get());
+            }
+            return union;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sampling interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Sampling failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
 }
@@ -0,0 +1,192 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       9/1/2012
+ *  Last updated:  9/1/2012
+ *
+ *  Reads whitespace-separated tokens from a channel through a buffer,
+ *  scanning bytes directly instead of matching patterns as StdIn does.
+ *  Tokens can be skipped without being decoded into strings.
+ *
+ *----------------------------------------------------------------*/
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+
+public class TokenReader implements Closeable {
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ReadableByteChannel channel; // The source of bytes
+    private ByteBuffer buffer; // Bytes read, scanned from its position
+                               // up to its limit
+    private boolean endOfInput; // True once the channel has no more bytes
+
+    /**
+     * Creates the reader of the channel. The reader owns the channel
+     * and closes it.
+     *
+     * @param channel the source of bytes
+     */
+    public TokenReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        this.buffer.flip();
+        this.endOfInput = false;
+    }
+
+    /**
+     * Creates the reader of the standard input.
+     *
+     * @return the reader of the standard input
+     */
+    public static TokenReader standardInput() {
+        return new TokenReader(
+                new FileInputStream(FileDescriptor.in).getChannel());
+    }
+
+    /**
+     * Creates the reader of the file.
+     *
+     * @param path the path of the file
+     * @return the reader of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public static TokenReader open(String path) throws IOException {
+        return new TokenReader(new FileInputStream(path).getChannel());
+    }
+
+    /**
+     * Checks if there are no more tokens.
+     *
+     * @return true if only whitespace is left
+     * @throws IOException if the channel cannot be read
+     */
+    public boolean isEmpty() throws IOException {
+        return !skipWhitespace();
+    }
+
+    /**
+     * Reads the next token, decoded as UTF-8.
+     *
+     * @return the next token
+     * @throws NoSuchElementException if there are no more tokens
+     * @throws IOException if the channel cannot be read
+     */
+    public String readString() throws IOException {
+        if (!skipWhitespace()) {
+            throw new NoSuchElementException();
+        }
+
+        int length = tokenLength();
+        String token = new String(buffer.array(), buffer.position(), length,
+                UTF_8);
+        buffer.position(buffer.position() + length);
+        return token;
+    }
+
+    /**
+     * Skips the given number of tokens without decoding them.
+     *
+     * @param count the number of tokens to skip
+     * @return the number of tokens skipped, less than the count only at
+     *         the end of input
+     * @throws IOException if the channel cannot be read
+     */
+    public long skip(long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count && skipWhitespace()) {
+            int length = tokenLength(); // May move the token
+            buffer.position(buffer.position() + length);
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Moves past whitespace up to the start of the next token.
+     *
+     * @return false if the input ends before the next token
+     */
+    private boolean skipWhitespace() throws IOException {
+        while (true) {
+            byte[] bytes = buffer.array();
+            int p = buffer.position();
+            int limit = buffer.limit();
+            while (p < limit && isWhitespace(bytes[p])) {
+                p++;
+            }
+            buffer.position(p);
+            if (p < limit) return true;
+            if (!fill()) return false;
+        }
+    }
+
+    /**
+     * Returns the length of the token starting at the position, reading
+     * more bytes until its end is buffered. The token is moved to
+     * the front of the buffer if it does not fit behind.
+     */
+    private int tokenLength() throws IOException {
+        int length = 0;
+        while (true) {
+            byte[] bytes = buffer.array();
+            int p = buffer.position() + length;
+            int limit = buffer.limit();
+            while (p < limit && !isWhitespace(bytes[p])) {
+                p++;
+            }
+            length = p - buffer.position();
+            if (p < limit || !fill()) return length;
+        }
+    }
+
+    /**
+     * Reads more bytes behind the unscanned ones, compacting the buffer
+     * first and doubling it if the unscanned bytes fill all of it.
+     *
+     * @return false if the channel has no more bytes
+     */
+    private boolean fill() throws IOException {
+        if (endOfInput) return false;
+
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        int read = 0;
+        while (read == 0) {
+            read = channel.read(buffer);
+        }
+        buffer.flip();
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the byte is an ASCII whitespace or control character.
+     * Such bytes never occur inside multi-byte UTF-8 characters.
+     */
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+}
@@ -0,0 +1,187 @@
+/*----------------------------------------------------------------
+ *  Author:        Aliaksandr Sazonenka
+ *  Written:       9/1/2012
+ *  Last updated:  9/1/2012
+ *
+ *  Models a lock-free double-ended queue for work stealing: the owner
+ *  thread pushes and pops items at the bottom, and other threads steal
+ *  items from the top (Chase-Lev).
+ *
+ *----------------------------------------------------------------*/
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class WorkStealingDeque<Item> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<WorkStealingDeque> TOP =
+            AtomicLongFieldUpdater.newUpdater(WorkStealingDeque.class, "top");
+
+    private volatile long top; // The position of the oldest item, only
+                               // ever increased by CAS
+    private volatile long bottom; // The position after the newest item,
+                                  // written by the owner only
+    private long cleared; // The position up to which the slots of stolen
+                          // items are cleared, used by the owner only
+    private volatile AtomicReferenceArray<Item> values; // The circular array
+                                                        // to keep the queue,
+                                                        // its length is
+                                                        // a power of two
+
+    /**
+     * Creates the deque object
+     */
+    public WorkStealingDeque() {
+        this.values = new AtomicReferenceArray<Item>(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Inserts the item at the bottom of the queue. Only the owner thread
+     * may call it.
+     *
+     * @param item the item to add
+     * @throws NullPointerException if the item is null
+     */
+    public void push(Item item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+
+        long b = bottom;
+        long t = top;
+        AtomicReferenceArray<Item> a = values;
+        clearStolen(a, t);
+        if (b - t >= a.length()) {
+            a = grow(a, t, b);
+        }
+        a.lazySet((int) b & (a.length() - 1), item);
+        bottom = b + 1; // Publishes the item to thieves
+    }
+
+    /**
+     * Deletes and returns the item at the bottom of the queue. Only
+     * the owner thread may call it.
+     *
+     * @return the newest item, or null if the queue is empty
+     */
+    public Item pop() {
+        long b = bottom - 1;
+        AtomicReferenceArray<Item> a = values;
+        bottom = b; // Volatile write and read below keep their order, so
+                    // a thief either sees the item gone or the owner sees
+                    // the thief's CAS
+        long t = top;
+        clearStolen(a, t);
+        if (t > b) { // Empty
+            bottom = b + 1;
+            return null;
+        }
+
+        int index = (int) b & (a.length() - 1);
+        Item item = a.get(index);
+        if (t == b) { // The last item, race thieves for it
+            if (!TOP.compareAndSet(this, t, t + 1)) {
+                item = null;
+            } else {
+                a.lazySet(index, null);
+            }
+            bottom = b + 1;
+        } else {
+            a.lazySet(index, null);
+        }
+        return item;
+    }
+
+    /**
+     * Deletes and returns the item at the top of the queue. Any thread
+     * may call it.
+     *
+     * @return the oldest item, or null if the queue is empty or another
+     *         thread took the item first
+     */
+    public Item steal() {
+        long t = top;
+        long b = bottom;
+        if (t >= b) {
+            return null;
+        }
+
+        AtomicReferenceArray<Item> a = values;
+        int index = (int) t & (a.length() - 1);
+        Item item = a.get(index);
+        if (item == null || !TOP.compareAndSet(this, t, t + 1)) {
+            return null;
+        }
+        return item;
+    }
+
+    /**
+     * Checks if the queue is empty. The answer may be outdated by the time
+     * it is returned if other threads use the queue.
+     *
+     * @return true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of items in the queue. The answer may be outdated
+     * by the time it is returned if other threads use the queue.
+     *
+     * @return the number of items in the queue
+     */
+    public int size() {
+        long t = top;
+        long b = bottom;
+        return (int) Math.max(0, b - t);
+    }
+
+    /**
+     * Returns the length of the array, for tests to check when it grows.
+     */
+    int capacity() {
+        return values.length();
+    }
+
+    /**
+     * Clears the slots of items stolen below the top, so that the queue
+     * drops its references to them. Thieves never write slots, since
+     * the owner may already have reused one for a new item. Every slot
+     * below the top holds a taken item or null: the owner writes one
+     * only while the queue is shorter than the array.
+     */
+    private void clearStolen(AtomicReferenceArray<Item> a, long t) {
+        int mask = a.length() - 1;
+        for (long p = Math.max(cleared, t - a.length()); p < t; p++) {
+            a.lazySet((int) p & mask, null);
+        }
+        if (t > cleared) {
+            cleared = t;
+        }
+    }
+
+    /**
+     * Copies the items in [t, b) to an array twice as long and publishes
+     * it. Thieves holding the old array still find the items they can
+     * win there, since the owner does not change it any more. Items
+     * stolen while copying are copied too and cleared later like any
+     * other stolen item.
+     */
+    private AtomicReferenceArray<Item> grow(AtomicReferenceArray<Item> a,
+            long t, long b) {
+        int newSize = a.length() * 2;
+        AtomicReferenceArray<Item> newValues =
+                new AtomicReferenceArray<Item>(newSize);
+        for (long p = t; p < b; p++) {
+            newValues.lazySet((int) p & (newSize - 1),
+                    a.get((int) p & (a.length() - 1)));
+        }
+        values = newValues;
+        return newValues;
+    }
+
+}
@@ -0,0 +1,234 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class ConcurrentRandomizedQueueTest {
+
+    private ConcurrentRandomizedQueue<Integer> queue;
+
+    @Before
+    public void setUp() throws Exception {
+        queue = new ConcurrentRandomizedQueue<Integer>(8);
+    }
+
+    @Test
+    public void enqueue5AndDequeue5() {
+        for (int i = 1; i <= 5; i++) {
+            queue.enqueue(i);
+            assertThat(queue.size(), is(i));
+        }
+
+        boolean[] dequeued = new boolean[6];
+        for (int i = 4; i >= 0; i--) {
+            Integer item = queue.dequeue();
+            assertThat(dequeued[item], is(false));
+            dequeued[item] = true;
+            assertThat(queue.size(), is(i));
+        }
+        assertThat(queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void iteratesOverAllItems() {
+        for (int i = 0; i < 100; i++) {
+            queue.enqueue(i);
+        }
+
+        boolean[] seen = new boolean[100];
+        int count = 0;
+        for (Integer item : queue) {
+            assertThat(seen[item], is(false));
+            seen[item] = true;
+            count++;
+        }
+        assertThat(count, is(100));
+    }
+
+    /**
+     * Ten items end up in eight stripes very unevenly, so choosing
+     * a random non-empty stripe would favour items alone in their stripe.
+     * Choosing stripes by size must keep the first dequeued item uniform:
+     * the chi-square statistic with 9 degrees of freedom stays below 45
+     * (p < 1e-6 for a uniform choice).
+     */
+    @Test
+    public void dequeueIsUniform() {
+        int trials = 20000;
+        int[] counts = new int[10];
+        for (int t = 0; t < trials; t++) {
+            ConcurrentRandomizedQueue<Integer> q =
+                    new ConcurrentRandomizedQueue<Integer>(8);
+            for (int i = 0; i < counts.length; i++) {
+                q.enqueue(i);
+            }
+            counts[q.dequeue()]++;
+        }
+
+        double expected = ((double) trials) / counts.length;
+        double chiSquare = 0.0;
+        for (int count : counts) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        assertThat(chiSquare, lessThan(45.0));
+    }
+
+    /**
+     * Measures the bias of dequeue while three other threads keep adding
+     * and removing items. The queue holds 10 tracked items among about
+     * 100 others. The other threads add an item and remove one that is
+     * not tracked, putting tracked ones straight back, so the mix stays
+     * steady while stripes and the bound of stripe sizes keep changing.
+     * The draws are made in 50 short rounds, so that a thread paused
+     * while it holds a tracked item costs that item only a few draws.
+     * <p>
+     * Tolerance: the 10 tracked items must be dequeued equally often,
+     * with the chi-square statistic with 9 degrees of freedom below 45
+     * (p < 1e-6 for uniform choices). Together, they must make up their
+     * share of the queue, 10 / 110 of the items taken, within 25%.
+     */
+    @Test(timeout = 60000)
+    public void dequeueStaysUniformUnderConcurrentChanges() throws Exception {
+        final int tracked = 10;
+        for (int i = 0; i < tracked; i++) {
+            queue.enqueue(i);
+        }
+        for (int i = 0; i < 100; i++) {
+            queue.enqueue(tracked + i);
+        }
+
+        int rounds = 50;
+        int samplesPerRound = 1000;
+        int[] counts = new int[tracked];
+        int trackedTaken = 0;
+        for (int r = 0; r < rounds; r++) {
+            final AtomicBoolean running = new AtomicBoolean(true);
+            List<Thread> workers = new ArrayList<Thread>();
+            for (int k = 0; k < 3; k++) {
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        while (running.get()) {
+                            queue.enqueue(tracked + 100);
+                            Integer item;
+                            while ((item = queue.dequeue()) < tracked) {
+                                queue.enqueue(item);
+                            }
+                        }
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+
+            for (int t = 0; t < samplesPerRound; t++) {
+                Integer item = queue.dequeue();
+                if (item < tracked) {
+                    counts[item]++;
+                    trackedTaken++;
+                }
+                queue.enqueue(item);
+            }
+            running.set(false);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        double expected = ((double) trackedTaken) / tracked;
+        double chiSquare = 0.0;
+        for (int count : counts) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        assertThat(chiSquare, lessThan(45.0));
+
+        double share = ((double) trackedTaken) / (rounds * samplesPerRound);
+        double expectedShare = ((double) tracked) / 110;
+        assertThat(Math.abs(share - expectedShare) / expectedShare,
+                lessThan(0.25));
+    }
+
+    @Test(timeout = 60000)
+    public void concurrentDequeuesTakeEveryItemOnce() throws Exception {
+        final int threads = 4;
+        final int itemsPerThread = 50000;
+        final int[] takenTimes = new int[threads * itemsPerThread];
+
+        final List<List<Integer>> taken = new ArrayList<List<Integer>>();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int k = 0; k < threads; k++) {
+            final int first = k * itemsPerThread;
+            final List<Integer> dequeued = new ArrayList<Integer>();
+            taken.add(dequeued);
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < itemsPerThread; i++) {
+                        queue.enqueue(first + i);
+                        if (i % 2 == 1) {
+                            dequeued.add(queue.dequeue());
+                        }
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        for (List<Integer> dequeued : taken) {
+            for (Integer item : dequeued) {
+                takenTimes[item]++;
+            }
+        }
+        while (!queue.isEmpty()) {
+            takenTimes[queue.dequeue()]++;
+        }
+        for (int i = 0; i < takenTimes.length; i++) {
+            assertThat("item " + i, takenTimes[i], is(1));
+        }
+    }
+
+    @Test
+    public void drainsStripesOfAnyCount() {
+        ConcurrentRandomizedQueue<Integer> five =
+                new ConcurrentRandomizedQueue<Integer>(5);
+        for (int i = 0; i < 100; i++) {
+            five.enqueue(i);
+        }
+
+        boolean[] dequeued = new boolean[100];
+        for (int i = 99; i >= 0; i--) {
+            Integer item = five.dequeue();
+            assertThat(dequeued[item], is(false));
+            dequeued[item] = true;
+            assertThat(five.size(), is(i));
+        }
+        assertThat(five.isEmpty(), is(true));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void dequeueFromEmptyQueue() {
+        queue.dequeue();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void sampleFromEmptyQueue() {
+        queue.sample();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void enqueueNull() {
+        queue.enqueue(null);
+    }
+
+}
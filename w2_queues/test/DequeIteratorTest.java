@@ -28,6 +28,20 @@ public class DequeIteratorTest {
         assertThat(sb.toString(), is("321"));
     }
 
+    @Test
+    public void iteratesAcrossWraparound() {
+        deque.addLast(0);
+        deque.removeLast();
+        deque.addFirst(4);
+        deque.addLast(0);
+
+        StringBuilder sb = new StringBuilder();
+        for (Integer i : deque) {
+            sb.append(i);
+        }
+        assertThat(sb.toString(), is("43210"));
+    }
+
     @Test
     public void iteratorsAreIndependent() {
         Iterator<Integer> iteratorI = deque.iterator();
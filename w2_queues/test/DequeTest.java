@@ -81,6 +81,49 @@ public class DequeTest {
         assertThat(deque.size(), is(0));
     }
 
+    @Test
+    public void wrapsAroundTheEnds() {
+        // Keep the front moving backwards around the array
+        for (int i = 0; i < 100; i++) {
+            deque.addFirst(2 * i);
+            deque.addFirst(2 * i + 1);
+            Integer last = deque.removeLast();
+            assertThat(last, is(i));
+        }
+        assertThat(deque.size(), is(100));
+
+        for (int i = 199; i >= 100; i--) {
+            Integer first = deque.removeFirst();
+            assertThat(first, is(i));
+        }
+        assertThat(deque.isEmpty(), is(true));
+    }
+
+    @Test
+    public void growsAndShrinks() {
+        for (int i = 0; i < 1000; i++) {
+            deque.addLast(i);
+        }
+        assertThat(deque.capacity(), is(1024));
+
+        for (int i = 0; i < 990; i++) {
+            Integer first = deque.removeFirst();
+            assertThat(first, is(i));
+        }
+        assertThat(deque.size(), is(10));
+        assertThat(deque.capacity(), is(32));
+
+        for (int i = 999; i >= 990; i--) {
+            Integer last = deque.removeLast();
+            assertThat(last, is(i));
+        }
+        assertThat(deque.isEmpty(), is(true));
+        assertThat(deque.capacity(), is(2));
+
+        deque.addFirst(1);
+        assertThat(deque.removeLast(), is(1));
+    }
+
     @Test(expected = NoSuchElementException.class)
     public void removeFirstFromEmptyDeque() {
         deque.removeFirst();
@@ -0,0 +1,86 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LongDequeTest {
+
+    private LongDeque deque;
+
+    @Before
+    public void setUp() throws Exception {
+        deque = new LongDeque();
+    }
+
+    @Test
+    public void addFirstAndRemoveLast() {
+        deque.addFirst(1);
+        deque.addFirst(2);
+        deque.addFirst(3);
+        assertThat(deque.size(), is(3));
+
+        assertThat(deque.removeLast(), is(1L));
+        assertThat(deque.removeLast(), is(2L));
+        assertThat(deque.removeLast(), is(3L));
+        assertThat(deque.isEmpty(), is(true));
+    }
+
+    @Test
+    public void addLastAndRemoveFirst() {
+        deque.addLast(1);
+        deque.addLast(2);
+        deque.addLast(3);
+        assertThat(deque.size(), is(3));
+
+        assertThat(deque.removeFirst(), is(1L));
+        assertThat(deque.removeFirst(), is(2L));
+        assertThat(deque.removeFirst(), is(3L));
+        assertThat(deque.isEmpty(), is(true));
+    }
+
+    @Test
+    public void growsAndShrinksAcrossWraparound() {
+        for (int i = 0; i < 1000; i++) {
+            deque.addFirst(2 * i);
+            deque.addLast(2 * i + 1);
+        }
+        for (int i = 999; i >= 10; i--) {
+            assertThat(deque.removeFirst(), is(2L * i));
+            assertThat(deque.removeLast(), is(2L * i + 1));
+        }
+        assertThat(deque.size(), is(20));
+    }
+
+    @Test
+    public void iteratesFromFrontToEnd() {
+        deque.addFirst(2);
+        deque.addFirst(1);
+        deque.addLast(3);
+
+        LongIterator iterator = deque.iterator();
+        StringBuilder sb = new StringBuilder();
+        while (iterator.hasNext()) {
+            sb.append(iterator.next());
+        }
+        assertThat(sb.toString(), is("123"));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void iteratorPastTheEnd() {
+        deque.iterator().next();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void removeFirstFromEmptyDeque() {
+        deque.removeFirst();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void removeLastFromEmptyDeque() {
+        deque.removeLast();
+    }
+
+}
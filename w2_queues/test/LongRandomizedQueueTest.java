@@ -0,0 +1,70 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LongRandomizedQueueTest {
+
+    private LongRandomizedQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        queue = new LongRandomizedQueue();
+    }
+
+    @Test
+    public void dequeuesEveryValueOnce() {
+        for (int i = 0; i < 100; i++) {
+            queue.enqueue(i);
+        }
+        assertThat(queue.size(), is(100));
+
+        boolean[] dequeued = new boolean[100];
+        for (int i = 99; i >= 0; i--) {
+            int value = (int) queue.dequeue();
+            assertThat(dequeued[value], is(false));
+            dequeued[value] = true;
+            assertThat(queue.size(), is(i));
+        }
+        assertThat(queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void sampleKeepsTheValue() {
+        queue.enqueue(7);
+        assertThat(queue.sample(), is(7L));
+        assertThat(queue.size(), is(1));
+    }
+
+    @Test
+    public void iteratesOverEveryValueOnce() {
+        for (int i = 0; i < 100; i++) {
+            queue.enqueue(i);
+        }
+
+        boolean[] seen = new boolean[100];
+        int count = 0;
+        LongIterator iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            int value = (int) iterator.next();
+            assertThat(seen[value], is(false));
+            seen[value] = true;
+            count++;
+        }
+        assertThat(count, is(100));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void dequeueFromEmptyQueue() {
+        queue.dequeue();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void sampleFromEmptyQueue() {
+        queue.sample();
+    }
+
+}
@@ -0,0 +1,161 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class RandomizedQueueIteratorTest {
+
+    private RandomizedQueue<Integer> queue;
+
+    @Before
+    public void setUp() throws Exception {
+        queue = new RandomizedQueue<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            queue.enqueue(i);
+        }
+    }
+
+    @Test
+    public void iteratesOverEveryItemOnce() {
+        boolean[] seen = new boolean[1000];
+        int count = 0;
+        for (Integer item : queue) {
+            assertThat(seen[item], is(false));
+            seen[item] = true;
+            count++;
+        }
+        assertThat(count, is(1000));
+    }
+
+    @Test
+    public void iteratorsAreIndependent() {
+        Iterator<Integer> iteratorI = queue.iterator();
+        Iterator<Integer> iteratorJ = queue.iterator();
+
+        boolean[] seenI = new boolean[1000];
+        boolean[] seenJ = new boolean[1000];
+        int same = 0;
+        while (iteratorI.hasNext()) {
+            Integer i = iteratorI.next();
+            Integer j = iteratorJ.next();
+            assertThat(seenI[i], is(false));
+            assertThat(seenJ[j], is(false));
+            seenI[i] = true;
+            seenJ[j] = true;
+            if (i.equals(j)) same++;
+        }
+        assertThat(iteratorJ.hasNext(), is(false));
+        assertThat(same, lessThan(10));
+    }
+
+    /**
+     * All 6 orders of 3 items must be equally likely: the chi-square
+     * statistic with 5 degrees of freedom stays below 35 (p < 1e-6).
+     */
+    @Test
+    public void permutationsAreUniform() {
+        RandomizedQueue<Integer> small = new RandomizedQueue<Integer>();
+        small.enqueue(0);
+        small.enqueue(1);
+        small.enqueue(2);
+
+        int trials = 12000;
+        int[] counts = new int[27];
+        for (int t = 0; t < trials; t++) {
+            int order = 0;
+            for (Integer item : small) {
+                order = order * 3 + item;
+            }
+            counts[order]++;
+        }
+
+        double expected = trials / 6.0;
+        double chiSquare = 0.0;
+        int orders = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                chiSquare += (count - expected) * (count - expected) / expected;
+                orders++;
+            }
+        }
+        assertThat(orders, is(6));
+        assertThat(chiSquare, lessThan(35.0));
+    }
+
+    /**
+     * The first 3 items of 64 are returned while positions are still
+     * swapped through the map, before the rest is shuffled at once.
+     * They must be distinct, and each of them must be equally likely to
+     * be any of the 64 items: the chi-square statistic with 63 degrees of
+     * freedom stays below 135 (p < 1e-6) for each position.
+     */
+    @Test
+    public void firstItemsOfLargeQueueAreUniform() {
+        int items = 64;
+        int positions = 3;
+        RandomizedQueue<Integer> large = new RandomizedQueue<Integer>();
+        for (int i = 0; i < items; i++) {
+            large.enqueue(i);
+        }
+
+        int trials = 20000;
+        int[][] counts = new int[positions][items];
+        for (int t = 0; t < trials; t++) {
+            Iterator<Integer> iterator = large.iterator();
+            boolean[] returned = new boolean[items];
+            for (int p = 0; p < positions; p++) {
+                int item = iterator.next();
+                assertThat(returned[item], is(false));
+                returned[item] = true;
+                counts[p][item]++;
+            }
+        }
+
+        double expected = ((double) trials) / items;
+        for (int p = 0; p < positions; p++) {
+            double chiSquare = 0.0;
+            for (int count : counts[p]) {
+                chiSquare += (count - expected) * (count - expected) / expected;
+            }
+            assertThat(chiSquare, lessThan(135.0));
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void nextAfterLastItem() {
+        Iterator<Integer> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+        }
+        iterator.next();
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void nextAfterQueueChanged() {
+        Iterator<Integer> iterator = queue.iterator();
+        iterator.next();
+        queue.dequeue();
+        iterator.next();
+    }
+
+    @Test
+    public void emptyBatchesKeepIterator() {
+        Iterator<Integer> iterator = queue.iterator();
+        iterator.next();
+        queue.dequeue(0);
+        queue.enqueueAll(new Integer[0]);
+        iterator.next();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void removeIsUnsupported() {
+        queue.iterator().remove();
+    }
+
+}
@@ -1,10 +1,14 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class RandomizedQueueTest {
 
@@ -79,6 +83,92 @@ public class RandomizedQueueTest {
         assertThat(queue.size(), is(0));
     }
 
+    @Test
+    public void dequeuesEveryItemOnce() {
+        for (int i = 1; i <= 5; i++) {
+            queue.enqueue(i);
+        }
+
+        boolean[] dequeued = new boolean[6];
+        for (int i = 4; i >= 0; i--) {
+            Integer item = queue.dequeue();
+            assertThat(dequeued[item], is(false));
+            dequeued[item] = true;
+            assertThat(queue.isEmpty(), is(i == 0));
+            assertThat(queue.size(), is(i));
+        }
+    }
+
+    @Test
+    public void enqueueAllAndDequeueK() {
+        queue.enqueue(0);
+        queue.enqueueAll(new Integer[] {1, 2, 3});
+        queue.enqueueAll(Arrays.asList(4, 5, 6, 7, 8, 9));
+        assertThat(queue.size(), is(10));
+
+        boolean[] dequeued = new boolean[10];
+        List<Integer> items = queue.dequeue(7);
+        assertThat(items.size(), is(7));
+        assertThat(queue.size(), is(3));
+        for (Integer item : queue.dequeue(3)) {
+            items.add(item);
+        }
+        for (Integer item : items) {
+            assertThat(dequeued[item], is(false));
+            dequeued[item] = true;
+        }
+        assertThat(queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void sampleKKeepsItems() {
+        queue.enqueueAll(new Integer[] {0, 1, 2, 3, 4});
+
+        boolean[] sampled = new boolean[5];
+        for (Integer item : queue.sample(5)) {
+            assertThat(sampled[item], is(false));
+            sampled[item] = true;
+        }
+        assertThat(queue.size(), is(5));
+        assertThat(queue.sample(0).isEmpty(), is(true));
+    }
+
+    /**
+     * Dequeues 3 of 10 items at once: every item must be taken with
+     * the same probability, so the chi-square statistic with 9 degrees
+     * of freedom stays below 45 (p < 1e-6).
+     */
+    @Test
+    public void dequeueKIsUniform() {
+        int trials = 20000;
+        int[] counts = new int[10];
+        for (int t = 0; t < trials; t++) {
+            RandomizedQueue<Integer> q = new RandomizedQueue<Integer>();
+            q.enqueueAll(new Integer[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+            for (Integer item : q.dequeue(3)) {
+                counts[item]++;
+            }
+        }
+
+        double expected = 3.0 * trials / counts.length;
+        double chiSquare = 0.0;
+        for (int count : counts) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        assertThat(chiSquare, lessThan(45.0));
+    }
+
+    @Test
+    public void enqueueAllWithNullAddsNothing() {
+        queue.enqueue(1);
+        try {
+            queue.enqueueAll(new Integer[] {2, null, 3});
+            fail("NullPointerException expected");
+        } catch (NullPointerException e) {
+            assertThat(queue.size(), is(1));
+        }
+    }
+
     @Test
     public void emptyQueue() {
         assertThat(queue.isEmpty(), is(true));
@@ -95,6 +185,17 @@ public class RandomizedQueueTest {
         queue.sample();
     }
 
+    @Test(expected = NoSuchElementException.class)
+    public void dequeueMoreThanSize() {
+        queue.enqueue(1);
+        queue.dequeue(2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sampleNegativeK() {
+        queue.sample(-1);
+    }
+
     @Test(expected = NullPointerException.class)
     public void enqueueNull() {
         queue.enqueue(null);
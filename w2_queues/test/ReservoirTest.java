@@ -0,0 +1,173 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class ReservoirTest {
+
+    private Reservoir<Integer> reservoir;
+
+    @Before
+    public void setUp() throws Exception {
+        reservoir = new Reservoir<Integer>(3);
+    }
+
+    @Test
+    public void keepsEveryItemUntilFull() {
+        reservoir.offer(1);
+        assertThat(reservoir.skippable(), is(0L));
+        reservoir.offer(2);
+        assertThat(reservoir.skippable(), is(0L));
+        assertThat(reservoir.size(), is(2));
+
+        int sum = 0;
+        for (Integer item : reservoir) {
+            sum += item;
+        }
+        assertThat(sum, is(3));
+    }
+
+    @Test
+    public void keepsKItems() {
+        for (int i = 0; i < 1000; i++) {
+            reservoir.offer(i);
+        }
+        assertThat(reservoir.size(), is(3));
+        assertThat(reservoir.seen(), is(1000L));
+
+        boolean[] kept = new boolean[1000];
+        for (Integer item : reservoir) {
+            assertThat(kept[item], is(false));
+            kept[item] = true;
+        }
+    }
+
+    /**
+     * Samples 3 of 20 items, skipping whatever the reservoir allows.
+     * Every item must be kept with the same probability: the chi-square
+     * statistic with 19 degrees of freedom stays below 70 (p < 1e-6).
+     */
+    @Test
+    public void keepsItemsUniformly() {
+        int trials = 20000;
+        int items = 20;
+        int[] counts = new int[items];
+        for (int t = 0; t < trials; t++) {
+            Reservoir<Integer> r = new Reservoir<Integer>(3);
+            int i = 0;
+            while (i < items) {
+                long skip = Math.min(r.skippable(), items - i);
+                r.skip(skip);
+                i += skip;
+                if (i < items) {
+                    r.offer(i++);
+                }
+            }
+            for (Integer item : r) {
+                counts[item]++;
+            }
+        }
+
+        double expected = 3.0 * trials / items;
+        double chiSquare = 0.0;
+        for (int count : counts) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        assertThat(chiSquare, lessThan(70.0));
+    }
+
+    /**
+     * Samples 3 of 20 items split into shards of 2, 5 and 13 items,
+     * one of them shorter than the sample, and merges the reservoirs.
+     * Every item must be kept with the same probability, with the same
+     * bound as keepsItemsUniformly.
+     */
+    @Test
+    public void mergesItemsUniformly() {
+        int trials = 20000;
+        int[] shards = {2, 5, 13};
+        int[] counts = new int[20];
+        for (int t = 0; t < trials; t++) {
+            Reservoir<Integer> union = new Reservoir<Integer>(3);
+            int first = 0;
+            for (int shard : shards) {
+                Reservoir<Integer> r = new Reservoir<Integer>(3);
+                for (int i = first; i < first + shard; i++) {
+                    r.offer(i);
+                }
+                first += shard;
+                union = Reservoir.merge(union, r);
+            }
+            assertThat(union.size(), is(3));
+            assertThat(union.seen(), is(20L));
+            for (Integer item : union) {
+                counts[item]++;
+            }
+        }
+
+        double expected = 3.0 * trials / counts.length;
+        double chiSquare = 0.0;
+        for (int count : counts) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        assertThat(chiSquare, lessThan(70.0));
+    }
+
+    @Test
+    public void mergeOfShortStreamsKeepsEveryItem() {
+        Reservoir<Integer> other = new Reservoir<Integer>(3);
+        reservoir.offer(1);
+        other.offer(2);
+
+        Reservoir<Integer> union = Reservoir.merge(reservoir, other);
+        assertThat(union.size(), is(2));
+        int sum = 0;
+        for (Integer item : union) {
+            sum += item;
+        }
+        assertThat(sum, is(3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void offerToMerge() {
+        Reservoir.merge(reservoir, new Reservoir<Integer>(3)).offer(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeDifferentK() {
+        Reservoir.merge(reservoir, new Reservoir<Integer>(2));
+    }
+
+    @Test
+    public void emptyReservoirSkipsEverything() {
+        Reservoir<Integer> empty = new Reservoir<Integer>(0);
+        empty.offer(1);
+        assertThat(empty.isEmpty(), is(true));
+        assertThat(empty.skippable(), is(Long.MAX_VALUE - 2));
+    }
+
+    @Test
+    public void keepsReplacingInVeryLongStreams() {
+        Reservoir<Long> one = new Reservoir<Long>(1);
+        one.offer(0L);
+        while (one.seen() < 100000000000000000L) {
+            long skippable = one.skippable();
+            assertThat(skippable, lessThan(Long.MAX_VALUE - one.seen() - 1));
+            one.skip(skippable);
+            one.offer(one.seen());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void skipMoreThanSkippable() {
+        reservoir.skip(1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void offerNull() {
+        reservoir.offer(null);
+    }
+
+}
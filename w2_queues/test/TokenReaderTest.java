@@ -0,0 +1,67 @@
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.util.NoSuchElementException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TokenReaderTest {
+
+    private static TokenReader reader(String text) throws Exception {
+        return new TokenReader(Channels.newChannel(
+                new ByteArrayInputStream(text.getBytes("UTF-8"))));
+    }
+
+    @Test
+    public void readsTokensSeparatedByWhitespace() throws Exception {
+        TokenReader reader = reader("  A\tBC\r\n\u00e9t\u00e9  D \n");
+        assertThat(reader.readString(), is("A"));
+        assertThat(reader.readString(), is("BC"));
+        assertThat(reader.readString(), is("\u00e9t\u00e9"));
+        assertThat(reader.isEmpty(), is(false));
+        assertThat(reader.readString(), is("D"));
+        assertThat(reader.isEmpty(), is(true));
+    }
+
+    @Test
+    public void readsTokensAcrossBufferRefills() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            text.append(i).append(' ');
+        }
+        TokenReader reader = reader(text.toString());
+        for (int i = 0; i < 100000; i++) {
+            assertThat(reader.readString(), is(Integer.toString(i)));
+        }
+        assertThat(reader.isEmpty(), is(true));
+    }
+
+    @Test
+    public void readsTokenLongerThanBuffer() throws Exception {
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            token.append((char) ('a' + i % 26));
+        }
+        TokenReader reader = reader("x " + token + " y");
+        assertThat(reader.readString(), is("x"));
+        assertThat(reader.readString(), is(token.toString()));
+        assertThat(reader.readString(), is("y"));
+    }
+
+    @Test
+    public void skipsTokens() throws Exception {
+        TokenReader reader = reader("A B C D E");
+        assertThat(reader.skip(2), is(2L));
+        assertThat(reader.readString(), is("C"));
+        assertThat(reader.skip(5), is(2L));
+        assertThat(reader.isEmpty(), is(true));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void readFromEmptyInput() throws Exception {
+        reader(" \n ").readString();
+    }
+
+}
@@ -0,0 +1,444 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class WorkStealingDequeTest {
+
+    private WorkStealingDeque<Integer> deque;
+
+    @Before
+    public void setUp() throws Exception {
+        deque = new WorkStealingDeque<Integer>();
+    }
+
+    @Test
+    public void pushAndPopFromBottom() {
+        deque.push(1);
+        deque.push(2);
+        deque.push(3);
+        assertThat(deque.size(), is(3));
+
+        assertThat(deque.pop(), is(3));
+        assertThat(deque.pop(), is(2));
+        assertThat(deque.pop(), is(1));
+        assertThat(deque.isEmpty(), is(true));
+    }
+
+    @Test
+    public void stealFromTop() {
+        deque.push(1);
+        deque.push(2);
+        deque.push(3);
+
+        assertThat(deque.steal(), is(1));
+        assertThat(deque.pop(), is(3));
+        assertThat(deque.steal(), is(2));
+        assertThat(deque.isEmpty(), is(true));
+    }
+
+    @Test
+    public void growsAcrossWraparound() {
+        for (int i = 0; i < 10; i++) {
+            deque.push(i);
+        }
+        for (int i = 0; i < 10; i++) {
+            assertThat(deque.steal(), is(i));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            deque.push(i);
+        }
+        assertThat(deque.size(), is(100));
+        for (int i = 99; i >= 50; i--) {
+            assertThat(deque.pop(), is(i));
+        }
+        for (int i = 0; i < 50; i++) {
+            assertThat(deque.steal(), is(i));
+        }
+        assertThat(deque.isEmpty(), is(true));
+    }
+
+    /**
+     * Runs random pushes, pops and steals on one thread, enough to grow
+     * the array and wrap around it many times, and compares every result
+     * with an ArrayDeque.
+     */
+    @Test
+    public void matchesSequentialModel() {
+        ArrayDeque<Integer> model = new ArrayDeque<Integer>();
+        Random random = new Random(1);
+        int next = 0;
+        for (int step = 0; step < 200000; step++) {
+            int op = random.nextInt(10);
+            int phase = (step / 20000) % 2; // Fills, then drains
+            if (op < 4 + 2 * phase) {
+                assertThat(deque.pop(), is(model.pollLast()));
+            } else if (op < 6 + 2 * phase) {
+                assertThat(deque.steal(), is(model.pollFirst()));
+            } else {
+                deque.push(next);
+                model.addLast(next++);
+            }
+            assertThat(deque.size(), is(model.size()));
+        }
+    }
+
+    /**
+     * Stolen and popped items must not stay referenced by the deque.
+     */
+    @Test
+    public void releasesTakenItems() throws Exception {
+        WorkStealingDeque<Object> objects = new WorkStealingDeque<Object>();
+        List<WeakReference<Object>> references =
+                new ArrayList<WeakReference<Object>>();
+        for (int i = 0; i < 100; i++) {
+            Object item = new Object();
+            references.add(new WeakReference<Object>(item));
+            objects.push(item);
+        }
+        for (int i = 0; i < 50; i++) {
+            objects.steal();
+            objects.pop();
+        }
+
+        // System.gc() is only a hint, so collect until every item is gone
+        // or the tries run out
+        int alive = references.size();
+        for (int tries = 0; tries < 100 && alive > 0; tries++) {
+            System.gc();
+            Thread.sleep(10);
+            alive = 0;
+            for (WeakReference<Object> reference : references) {
+                if (reference.get() != null) alive++;
+            }
+        }
+        assertThat(alive, is(0));
+    }
+
+    /**
+     * The owner keeps fewer than 8 items while thieves steal, so the array
+     * never has to grow, however late the thieves are.
+     */
+    @Test(timeout = 60000)
+    public void stealingKeepsCapacity() throws Exception {
+        final AtomicBoolean pushing = new AtomicBoolean(true);
+        List<Thread> thieves = new ArrayList<Thread>();
+        for (int k = 0; k < 2; k++) {
+            Thread thief = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (pushing.get()) {
+                        deque.steal();
+                    }
+                }
+            });
+            thieves.add(thief);
+            thief.start();
+        }
+
+        for (int i = 0; i < 200000; i++) {
+            if (deque.size() < 8) {
+                deque.push(i);
+            } else {
+                deque.pop();
+            }
+        }
+        pushing.set(false);
+        for (Thread thief : thieves) {
+            thief.join();
+        }
+        assertThat(deque.capacity(), is(16));
+    }
+
+    @Test
+    public void emptyDeque() {
+        assertThat(deque.isEmpty(), is(true));
+        assertThat(deque.size(), is(0));
+        assertThat(deque.pop(), is(nullValue()));
+        assertThat(deque.steal(), is(nullValue()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void pushNull() {
+        deque.push(null);
+    }
+
+    /**
+     * The owner pushes increasing items and pops some of them while
+     * thieves steal. Every item must be taken exactly once, and every
+     * thief must take items in increasing order, since it takes them
+     * from the top.
+     */
+    @Test(timeout = 60000)
+    public void concurrentPopsAndStealsTakeEveryItemOnce() throws Exception {
+        final int items = 200000;
+        final int thieves = 3;
+
+        final AtomicBoolean pushing = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<List<Integer>> stolen = new ArrayList<List<Integer>>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int k = 0; k < thieves; k++) {
+            final List<Integer> taken = new ArrayList<Integer>();
+            stolen.add(taken);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    while (pushing.get() || !deque.isEmpty()) {
+                        Integer item = deque.steal();
+                        if (item != null) {
+                            taken.add(item);
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        List<Integer> popped = new ArrayList<Integer>();
+        Random random = new Random(1);
+        start.countDown();
+        for (int i = 0; i < items; i++) {
+            deque.push(i);
+            if (random.nextInt(3) == 0) {
+                Integer item = deque.pop();
+                if (item != null) {
+                    popped.add(item);
+                }
+            }
+        }
+        pushing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int[] takenTimes = new int[items];
+        for (Integer item : popped) {
+            takenTimes[item]++;
+        }
+        for (List<Integer> taken : stolen) {
+            for (int k = 0; k < taken.size(); k++) {
+                takenTimes[taken.get(k)]++;
+                if (k > 0) {
+                    assertThat(taken.get(k) > taken.get(k - 1), is(true));
+                }
+            }
+        }
+        for (int i = 0; i < items; i++) {
+            assertThat("item " + i, takenTimes[i], is(1));
+        }
+    }
+
+    /**
+     * Lets the owner and two thieves run a few operations at once, many
+     * times over, recording when every operation starts and ends. Each
+     * history must be linearizable: some order of the operations that
+     * keeps every operation ending before another starts ahead of it
+     * gives the same results on an ArrayDeque. A steal may fail with
+     * null when it loses a race, so null steals fit anywhere.
+     */
+    @Test(timeout = 60000)
+    public void concurrentHistoriesAreLinearizable() throws Exception {
+        Random random = new Random(2);
+        for (int round = 0; round < 2000; round++) {
+            final WorkStealingDeque<Integer> shared =
+                    new WorkStealingDeque<Integer>();
+            shared.push(-1);
+            shared.push(-2);
+
+            final boolean[] ownerPushes = new boolean[4];
+            for (int i = 0; i < ownerPushes.length; i++) {
+                ownerPushes[i] = random.nextBoolean();
+            }
+            final List<List<Operation>> histories =
+                    new ArrayList<List<Operation>>();
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int k = 0; k < 3; k++) {
+                final int thread = k;
+                final List<Operation> history = new ArrayList<Operation>();
+                histories.add(history);
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        if (thread == 0) {
+                            runOwner(shared, ownerPushes, history);
+                        } else {
+                            for (int i = 0; i < 3; i++) {
+                                long begin = System.nanoTime();
+                                Integer item = shared.steal();
+                                history.add(new Operation(Operation.STEAL,
+                                        item, begin, System.nanoTime()));
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            List<Operation> operations = new ArrayList<Operation>();
+            for (List<Operation> history : histories) {
+                operations.addAll(history);
+            }
+            ArrayDeque<Integer> model = new ArrayDeque<Integer>();
+            model.addLast(-1);
+            model.addLast(-2);
+            assertThat("round " + round + ": " + operations,
+                    linearizable(operations, new boolean[operations.size()],
+                            model), is(true));
+        }
+    }
+
+    /**
+     * The search must reject histories no order explains, or the test
+     * above would pass whatever the deque did, and still accept
+     * operations that overlap in time in either order.
+     */
+    @Test
+    public void illegalHistoriesAreNotLinearizable() {
+        ArrayDeque<Integer> model = new ArrayDeque<Integer>();
+        model.addLast(-1);
+        model.addLast(-2);
+
+        List<Operation> takenTwice = new ArrayList<Operation>();
+        takenTwice.add(new Operation(Operation.STEAL, -1, 0, 1));
+        takenTwice.add(new Operation(Operation.STEAL, -1, 2, 3));
+        assertThat(linearizable(takenTwice, new boolean[2], model),
+                is(false));
+
+        List<Operation> popBeforePush = new ArrayList<Operation>();
+        popBeforePush.add(new Operation(Operation.POP, 0, 0, 1));
+        popBeforePush.add(new Operation(Operation.PUSH, 0, 2, 3));
+        assertThat(linearizable(popBeforePush, new boolean[2], model),
+                is(false));
+
+        List<Operation> stealFromBottom = new ArrayList<Operation>();
+        stealFromBottom.add(new Operation(Operation.STEAL, -2, 0, 1));
+        assertThat(linearizable(stealFromBottom, new boolean[1], model),
+                is(false));
+
+        List<Operation> overlapping = new ArrayList<Operation>();
+        overlapping.add(new Operation(Operation.POP, 0, 0, 3));
+        overlapping.add(new Operation(Operation.PUSH, 0, 1, 2));
+        assertThat(linearizable(overlapping, new boolean[2], model),
+                is(true));
+    }
+
+    private static void runOwner(WorkStealingDeque<Integer> shared,
+            boolean[] pushes, List<Operation> history) {
+        for (int i = 0; i < pushes.length; i++) {
+            long begin = System.nanoTime();
+            if (pushes[i]) {
+                shared.push(i);
+                history.add(new Operation(Operation.PUSH, i, begin,
+                        System.nanoTime()));
+            } else {
+                Integer item = shared.pop();
+                history.add(new Operation(Operation.POP, item, begin,
+                        System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Searches for an order of the operations not done yet that starts
+     * with one no other pending operation ended before, and that gives
+     * the recorded results when applied to the model.
+     */
+    private static boolean linearizable(List<Operation> operations,
+            boolean[] done, ArrayDeque<Integer> model) {
+        long firstEnd = Long.MAX_VALUE;
+        boolean pending = false;
+        for (int i = 0; i < operations.size(); i++) {
+            if (!done[i]) {
+                pending = true;
+                firstEnd = Math.min(firstEnd, operations.get(i).end);
+            }
+        }
+        if (!pending) return true;
+
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            if (done[i] || operation.begin > firstEnd) continue;
+
+            ArrayDeque<Integer> next = model.clone();
+            if (!operation.apply(next)) continue;
+            done[i] = true;
+            boolean found = linearizable(operations, done, next);
+            done[i] = false;
+            if (found) return true;
+        }
+        return false;
+    }
+
+    /**
+     * An operation of a recorded history.
+     */
+    private static class Operation {
+        private static final int PUSH = 0;
+        private static final int POP = 1;
+        private static final int STEAL = 2;
+
+        private int type;
+        private Integer item; // The item pushed or taken, null if none
+        private long begin;
+        private long end;
+
+        public Operation(int type, Integer item, long begin, long end) {
+            this.type = type;
+            this.item = item;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        /** Applies the operation to the model if the result fits it. */
+        public boolean apply(ArrayDeque<Integer> model) {
+            if (type == PUSH) {
+                model.addLast(item);
+                return true;
+            }
+            if (type == POP) {
+                Integer last = model.pollLast();
+                if (item == null) return last == null;
+                return item.equals(last);
+            }
+            if (item == null) return true;
+            return item.equals(model.pollFirst());
+        }
+
+        @Override
+        public String toString() {
+            return new String[] {"push", "pop", "steal"}[type] + "(" + item
+                    + ")";
+        }
+    }
+
+}